@@ -9,11 +9,63 @@ repositories {
     mavenCentral()
 }
 
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+val jmhImplementation by configurations.getting
+val jmhAnnotationProcessor by configurations.getting
+
 dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter-params:5.8.2")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.1")
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.37")
+    jmhAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+// The lexer's vector scanning uses the incubating Vector API, see CharRuns
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+// Only VectorCharRuns in the main source set uses the module. javac 17 has no
+// lint category for its "using incubating module(s)" warning, so compileJava
+// reports that one warning, which is expected; any other warning is not
+tasks.named<JavaCompile>("compileJava") {
+    options.compilerArgs.addAll(vectorModule)
 }
 
 tasks.getByName<Test>("test") {
     useJUnitPlatform()
-}
\ No newline at end of file
+    jvmArgs(vectorModule)
+}
+
+// Runs the JMH benchmarks, e.g. gradle jmh -Pjmh="LexerParallelBenchmark -f 1"
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks in src/jmh."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    jvmArgs(vectorModule)
+    args((providers.gradleProperty("jmh").orNull ?: "").split(" ").filter { it.isNotBlank() })
+}
+
+// Runs LexerBenchmark with the GC profiler and prints MB/s and bytes per token
+tasks.register<JavaExec>("jmhLexer") {
+    group = "verification"
+    description = "Runs the lexer benchmarks with the GC profiler."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("plc.project.LexerBenchmark")
+    jvmArgs(vectorModule)
+    args((providers.gradleProperty("jmh").orNull ?: "").split(" ").filter { it.isNotBlank() })
+}
+
+tasks.register<JavaExec>("jmhParser") {
+    group = "verification"
+    description = "Runs the parser benchmarks with the GC profiler."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("plc.project.ParserBenchmark")
+    jvmArgs(vectorModule)
+    args((providers.gradleProperty("jmh").orNull ?: "").split(" ").filter { it.isNotBlank() })
+}
@@ -0,0 +1,177 @@
+package plc.project;
+
+/**
+ * Generates PlcBase sources for the benchmarks. Generation is deterministic so
+ * that runs are comparable.
+ */
+public final class Corpus {
+
+    private Corpus() {}
+
+    /**
+     * Returns a program with a few globals and the given number of functions,
+     * each with a mix of declarations, loops, conditionals and literals.
+     */
+    public static String program(int functions) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("LIST values: Integer = [1, 2, 3, 4, 5];\n");
+        builder.append("VAR count: Integer = 0;\n");
+        builder.append("VAL name: String = \"corpus\";\n\n");
+        for (int i = 0; i < functions; i++) {
+            builder.append("FUN function").append(i).append("(x: Integer, y: Decimal): Integer DO\n");
+            builder.append("    LET total: Integer = x * ").append(i).append(" + values[").append(i % 5).append("];\n");
+            builder.append("    WHILE total > 0 && count != ").append(i).append(" DO\n");
+            builder.append("        total = total - 1;\n");
+            builder.append("        count = count + 1;\n");
+            builder.append("    END\n");
+            builder.append("    IF y < -0.5 || name == \"value\\n").append(i).append("\" DO\n");
+            builder.append("        print(\"negative\\t\" + y + '!');\n");
+            builder.append("    ELSE\n");
+            builder.append("        print(\"positive: \" + (x ^ 2) / 3.25);\n");
+            builder.append("    END\n");
+            builder.append("    RETURN total;\n");
+            builder.append("END\n\n");
+        }
+        builder.append("FUN main(): Integer DO\n    RETURN function0(1, 2.0);\nEND\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns the program of {@link #program(int)} with deep indentation and
+     * blank lines, so that most of the input is whitespace.
+     */
+    public static String whitespace(int functions) {
+        String indent = "\n" + " ".repeat(64) + "\t\t";
+        return program(functions).replace("\n", indent).replace(" = ", "     =     ");
+    }
+
+    /**
+     * Returns declarations of long identifiers, numbers and string literals,
+     * so that most of the input is in runs of literal characters.
+     */
+    public static String literals(int declarations) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("FUN main(): Integer DO\n");
+        for (int i = 0; i < declarations; i++) {
+            builder.append("    LET a_rather_long_descriptive_identifier_name_").append(i)
+                    .append(": String = \"").append("Lorem ipsum dolor sit amet, consectetur adipiscing elit ".repeat(2))
+                    .append(i).append("\\n\";\n");
+            builder.append("    LET another_long_identifier_for_a_number_").append(i)
+                    .append(" = 123456789012345678901234567890").append(i).append(".0987654321098765432109876543210;\n");
+        }
+        builder.append("    RETURN 0;\nEND\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns a program of string literals {@code length} characters long,
+     * with an escape every so often.
+     */
+    public static String strings(int count, int length) {
+        StringBuilder line = new StringBuilder();
+        while (line.length() < length) {
+            line.append("The quick brown fox jumps over the lazy dog.\\t");
+        }
+        line.setLength(length);
+        StringBuilder builder = new StringBuilder();
+        builder.append("FUN main(): Integer DO\n");
+        for (int i = 0; i < count; i++) {
+            builder.append("    print(\"").append(line).append(i).append("\");\n");
+        }
+        builder.append("    RETURN 0;\nEND\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns expression statements of single character names and operators
+     * with no whitespace, so that nearly every character is its own token.
+     */
+    public static String operators(int statements) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            builder.append("a=((b+c)*-d/e^f)==g!=h&&i||j<k>l-m[n]+o(p,q);");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the given number of one statement functions.
+     */
+    public static String functions(int functions) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            builder.append("FUN f").append(i).append("(x: Integer): Integer DO RETURN x + ").append(i).append("; END\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a function of {@code statements} statements nested {@code depth}
+     * deep at a time, cycling through {@code IF}, {@code WHILE} and {@code
+     * SWITCH}.
+     */
+    public static String nesting(int statements, int depth) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("FUN main() DO\n");
+        for (int i = 0; i < statements; i += depth) {
+            for (int level = 0; level < depth; level++) {
+                switch (level % 3) {
+                    case 0:
+                        builder.append("IF x < ").append(level).append(" DO\n");
+                        break;
+                    case 1:
+                        builder.append("WHILE x != ").append(level).append(" DO x = x - 1;\n");
+                        break;
+                    default:
+                        builder.append("SWITCH x CASE ").append(level).append(": print(x); DEFAULT\n");
+                        break;
+                }
+            }
+            builder.append("print(").append(i).append(");\n");
+            builder.append("END\n".repeat(depth));
+        }
+        builder.append("END\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns a single binary expression of {@code operands} operands, cycling
+     * through every operator so that each precedence level is used.
+     */
+    public static String expression(int operands) {
+        String[] operators = {" + ", " * ", " - ", " / ", " ^ ", " < ", " && ", " == ", " || ", " > ", " != "};
+        StringBuilder builder = new StringBuilder("a0");
+        for (int i = 1; i < operands; i++) {
+            builder.append(operators[i % operators.length]).append(i % 7 == 0 ? "f(b" + i + ")" : "a" + i);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a function returning {@link #expression(int)} chains of
+     * {@code operands} operands, {@code chains} times.
+     */
+    public static String chains(int chains, int operands) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("FUN main() DO\n");
+        String expression = expression(operands);
+        for (int i = 0; i < chains; i++) {
+            builder.append("x = ").append(expression).append(";\n");
+        }
+        builder.append("END\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns a {@code LIST} global with the given number of elements.
+     */
+    public static String list(int elements) {
+        StringBuilder builder = new StringBuilder("LIST values: Integer = [0");
+        for (int i = 1; i < elements; i++) {
+            builder.append(", ").append(i % 3 == 0 ? i + ".5" : i % 3 == 1 ? String.valueOf(i) : "\"" + i + "\"");
+        }
+        builder.append("];\n");
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,159 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The baseline for {@link Lexer#lex()} and for pulling tokens one at a time
+ * with {@link Lexer#lexNext()}, which wraps {@link Lexer#lexToken()}, over a
+ * range of corpora:
+ *
+ *  - {@code small}: a short script, dominated by per-lexer setup
+ *  - {@code large}: a generated program of several MB
+ *  - {@code strings}: very long string literals
+ *  - {@code operators}: dense operators with no whitespace
+ *  - {@code whitespace}: a program which is mostly indentation
+ *
+ * The {@link Input} counters report throughput in MB/s and tokens/s next to
+ * the operations per second. Running {@link #main(String[])}, e.g. through
+ * {@code gradle jmhLexer}, adds the GC profiler and prints the MB/s and the
+ * bytes allocated per token of each benchmark. Any other options can be given
+ * through {@code gradle jmh -Pjmh="LexerBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class LexerBenchmark {
+
+    @Param({"small", "large", "strings", "operators", "whitespace"})
+    public String corpus;
+
+    private String input;
+    private int tokens;
+
+    @Setup
+    public void setup() {
+        input = corpus(corpus);
+        tokens = new Lexer(input).lex().size();
+    }
+
+    static String corpus(String name) {
+        switch (name) {
+            case "small":
+                return Corpus.program(1);
+            case "large":
+                return Corpus.program(10_000);
+            case "strings":
+                return Corpus.strings(200, 20_000);
+            case "operators":
+                return Corpus.operators(50_000);
+            case "whitespace":
+                return Corpus.whitespace(2_000);
+            default:
+                throw new IllegalArgumentException("Unknown corpus " + name + ".");
+        }
+    }
+
+    /**
+     * Counts the input lexed by each operation. Since these are reported as
+     * rates, they are the MB/s and tokens/s of the benchmark.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Input {
+
+        public double megabytes;
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+            tokens = 0;
+        }
+
+    }
+
+    @Benchmark
+    public List<Token> lex(Input counters) {
+        count(counters);
+        return new Lexer(input).lex();
+    }
+
+    @Benchmark
+    public void lexToken(Input counters, Blackhole blackhole) {
+        count(counters);
+        Lexer lexer = new Lexer(input);
+        Token token;
+        while ((token = lexer.lexNext()) != null) {
+            blackhole.consume(token);
+        }
+    }
+
+    private void count(Input counters) {
+        counters.megabytes += input.length() / 1e6;
+        counters.tokens += tokens;
+    }
+
+    /**
+     * Runs every benchmark with the GC profiler and prints the throughput and
+     * allocation per token. The arguments are the usual JMH options, such as
+     * {@code -p corpus=large} or {@code -i 1}.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(LexerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+
+        System.out.printf("%n%-24s %-12s %12s %16s%n", "Benchmark", "Corpus", "MB/s", "Bytes/token");
+        for (RunResult result : results) {
+            String corpus = result.getParams().getParam("corpus");
+            double allocated = secondary(result, "gc.alloc.rate.norm");
+            double tokens = new Lexer(corpus(corpus)).lex().size();
+            System.out.printf("%-24s %-12s %12.1f %16.1f%n",
+                    result.getParams().getBenchmark().replaceFirst(".*\\.", ""),
+                    corpus,
+                    secondary(result, "megabytes"),
+                    allocated / tokens);
+        }
+    }
+
+    private static double secondary(RunResult result, String name) {
+        for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+            if (entry.getKey().endsWith(name)) {
+                return entry.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+
+}
@@ -0,0 +1,68 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Lexer#lex()} with and without the vector scanning of {@link
+ * CharRuns}, on whitespace heavy and literal heavy inputs as well as the
+ * typical generated program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class LexerVectorBenchmark {
+
+    @Param({"true", "false"})
+    public boolean vectorized;
+
+    @Param({"whitespace", "literals", "program"})
+    public String corpus;
+
+    private String input;
+
+    @Setup
+    public void setup() {
+        if (CharRuns.setEnabled(vectorized) != vectorized) {
+            throw new IllegalStateException("The jdk.incubator.vector module is not available.");
+        }
+        switch (corpus) {
+            case "whitespace":
+                input = Corpus.whitespace(2_000);
+                break;
+            case "literals":
+                input = Corpus.literals(5_000);
+                break;
+            default:
+                input = Corpus.program(2_000);
+                break;
+        }
+    }
+
+    @Benchmark
+    public List<Token> string() {
+        return new Lexer(input).lex();
+    }
+
+    @Benchmark
+    public List<Token> reader() {
+        return new Lexer(new StringReader(input)).lex();
+    }
+
+}
@@ -0,0 +1,228 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link Parser#parseSource()} and {@link Parser#parseExpression()}
+ * over pre-lexed tokens, so only the parser is measured. Sources are generated
+ * in four shapes, each at increasing sizes:
+ *
+ *  - {@code functions}: many one statement functions
+ *  - {@code nesting}: {@code IF}, {@code WHILE} and {@code SWITCH} nested 50 deep
+ *  - {@code chains}: assignments of 100 operand binary expressions
+ *  - {@code lists}: a single {@code LIST} literal
+ *
+ * The size is the number of functions, statements, operands or elements.
+ * Sources are parsed from a {@code List<Token>}, from a {@link TokenBuffer},
+ * and into a {@link FlatAst}, and decoded from the {@link AstFormat} encoding
+ * of their AST for comparison. The {@link Nodes} counter reports AST nodes per
+ * second; the nodes of a source are those of its {@link FlatAst} other than
+ * blocks and parameters, which are not {@link Ast} objects. Running {@link
+ * #main(String[])}, e.g. through {@code gradle jmhParser}, adds the GC
+ * profiler and prints the nodes per second and bytes allocated per node.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ParserBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Source {
+
+        @Param({"functions", "nesting", "chains", "lists"})
+        public String shape;
+
+        @Param({"1000", "10000", "100000"})
+        public int size;
+
+        private List<Token> tokens;
+        private TokenBuffer buffer;
+        private ByteBuffer encoded;
+        private int nodes;
+
+        @Setup
+        public void setup() {
+            String input = source(shape, size);
+            tokens = new Lexer(input).lex();
+            buffer = new Lexer(input).lexBuffer();
+            encoded = ByteBuffer.wrap(AstFormat.encode(new Parser(buffer).parseSource(), Digest.of(input)));
+            nodes = nodes(new Parser(buffer).parseFlatSource());
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class Expression {
+
+        @Param({"100", "1000", "10000"})
+        public int operands;
+
+        private List<Token> tokens;
+        private int nodes;
+
+        @Setup
+        public void setup() {
+            tokens = new Lexer(Corpus.expression(operands)).lex();
+            nodes = nodes(new Parser(tokens).parseExpression());
+        }
+
+    }
+
+    /**
+     * Counts the nodes parsed by each operation, which is reported as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+
+    }
+
+    static String source(String shape, int size) {
+        switch (shape) {
+            case "functions":
+                return Corpus.functions(size);
+            case "nesting":
+                return Corpus.nesting(size, 50);
+            case "chains":
+                return Corpus.chains(size / 100, 100);
+            case "lists":
+                return Corpus.list(size);
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape + ".");
+        }
+    }
+
+    @Benchmark
+    public Ast.Source parseSource(Source source, Nodes counters) {
+        counters.nodes += source.nodes;
+        return new Parser(source.tokens).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseBuffer(Source source, Nodes counters) {
+        counters.nodes += source.nodes;
+        return new Parser(source.buffer).parseSource();
+    }
+
+    @Benchmark
+    public FlatAst parseFlat(Source source, Nodes counters) {
+        counters.nodes += source.nodes;
+        return new Parser(source.buffer).parseFlatSource();
+    }
+
+    @Benchmark
+    public Ast.Source decode(Source source, Nodes counters) throws IOException {
+        counters.nodes += source.nodes;
+        return AstFormat.decode(source.encoded);
+    }
+
+    @Benchmark
+    public Ast.Expression parseExpression(Expression expression, Nodes counters) {
+        counters.nodes += expression.nodes;
+        return new Parser(expression.tokens).parseExpression();
+    }
+
+    static int nodes(FlatAst ast) {
+        int nodes = 0;
+        for (int node = 0; node < ast.size(); node++) {
+            if (ast.getKind(node) != FlatAst.Kind.BLOCK && ast.getKind(node) != FlatAst.Kind.PARAMETER) {
+                nodes++;
+            }
+        }
+        return nodes;
+    }
+
+    static int nodes(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Binary) {
+            return 1 + nodes(((Ast.Expression.Binary) ast).getLeft()) + nodes(((Ast.Expression.Binary) ast).getRight());
+        } else if (ast instanceof Ast.Expression.Group) {
+            return 1 + nodes(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Access) {
+            return 1 + ((Ast.Expression.Access) ast).getOffset().map(ParserBenchmark::nodes).orElse(0);
+        } else if (ast instanceof Ast.Expression.Function) {
+            return 1 + ((Ast.Expression.Function) ast).getArguments().stream().mapToInt(ParserBenchmark::nodes).sum();
+        } else if (ast instanceof Ast.Expression.PlcList) {
+            return 1 + ((Ast.Expression.PlcList) ast).getValues().stream().mapToInt(ParserBenchmark::nodes).sum();
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * Runs every benchmark with the GC profiler and prints the nodes per
+     * second and allocation per node. The arguments are the usual JMH options,
+     * such as {@code -p shape=chains} or {@code -i 1}.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+
+        System.out.printf("%n%-18s %-10s %8s %14s %14s%n", "Benchmark", "Shape", "Size", "Nodes/s", "Bytes/node");
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark().replaceFirst(".*\\.", "");
+            String shape;
+            String size;
+            int nodes;
+            if (benchmark.equals("parseExpression")) {
+                shape = "expression";
+                size = result.getParams().getParam("operands");
+                nodes = nodes(new Parser(new Lexer(Corpus.expression(Integer.parseInt(size))).lex()).parseExpression());
+            } else {
+                shape = result.getParams().getParam("shape");
+                size = result.getParams().getParam("size");
+                nodes = nodes(new Parser(new Lexer(source(shape, Integer.parseInt(size))).lexBuffer()).parseFlatSource());
+            }
+            System.out.printf("%-18s %-10s %8s %14.0f %14.1f%n", benchmark, shape, size,
+                    secondary(result, "nodes"), secondary(result, "gc.alloc.rate.norm") / nodes);
+        }
+    }
+
+    private static double secondary(RunResult result, String name) {
+        for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+            if (entry.getKey().endsWith(name)) {
+                return entry.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+
+}
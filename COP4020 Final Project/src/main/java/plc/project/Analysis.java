@@ -0,0 +1,193 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * The results of analyzing an AST: the type of each expression and the
+ * variable or function each declaration and reference resolves to. The
+ * {@link Analyzer} records its results here and the {@link Generator} reads
+ * them back.
+ *
+ * A new analysis stores results in side tables indexed by {@link Ast#getId()},
+ * leaving the AST untouched, so one parsed AST can be analyzed by several
+ * threads or against different scopes at once, each with its own analysis.
+ * Only nodes created by the {@link Parser} have ids. An analysis is not
+ * thread-safe itself and belongs to a single analyzer.
+ *
+ * {@link #inPlace()} instead stores results in the AST through its setters,
+ * such as {@link Ast.Expression.Literal#setType(Environment.Type)}, which is
+ * what {@link Analyzer#Analyzer(Scope)} and {@link
+ * Generator#Generator(java.io.PrintWriter)} use for ASTs built directly.
+ */
+public final class Analysis {
+
+    private static final Analysis IN_PLACE = new Analysis(0, true);
+
+    private final boolean inPlace;
+    private Environment.Type[] types;
+    private Environment.Variable[] variables;
+    private Environment.Function[] functions;
+
+    /**
+     * Creates an analysis with side tables for {@code capacity} nodes, such
+     * as {@link Parser#getNodeCount()}. The tables grow as needed.
+     */
+    public Analysis(int capacity) {
+        this(capacity, false);
+    }
+
+    public Analysis() {
+        this(16);
+    }
+
+    private Analysis(int capacity, boolean inPlace) {
+        this.inPlace = inPlace;
+        this.types = new Environment.Type[capacity];
+        this.variables = new Environment.Variable[capacity];
+        this.functions = new Environment.Function[capacity];
+    }
+
+    /**
+     * Returns the analysis which stores results in the AST itself.
+     */
+    public static Analysis inPlace() {
+        return IN_PLACE;
+    }
+
+    public boolean isInPlace() {
+        return inPlace;
+    }
+
+    /**
+     * Returns the type of an expression. As in {@link
+     * Ast.Expression#getType()}, accesses and calls have the type of their
+     * variable and the return type of their function.
+     */
+    public Environment.Type getType(Ast.Expression ast) {
+        if (inPlace) {
+            return ast.getType();
+        } else if (ast instanceof Ast.Expression.Access) {
+            return getVariable((Ast.Expression.Access) ast).getType();
+        } else if (ast instanceof Ast.Expression.Function) {
+            return getFunction((Ast.Expression.Function) ast).getReturnType();
+        }
+        return get(types, ast, "type");
+    }
+
+    public void setType(Ast.Expression.Literal ast, Environment.Type type) {
+        if (inPlace) {
+            ast.setType(type);
+        } else {
+            types = set(types, ast, type);
+        }
+    }
+
+    public void setType(Ast.Expression.Group ast, Environment.Type type) {
+        if (inPlace) {
+            ast.setType(type);
+        } else {
+            types = set(types, ast, type);
+        }
+    }
+
+    public void setType(Ast.Expression.Binary ast, Environment.Type type) {
+        if (inPlace) {
+            ast.setType(type);
+        } else {
+            types = set(types, ast, type);
+        }
+    }
+
+    public void setType(Ast.Expression.PlcList ast, Environment.Type type) {
+        if (inPlace) {
+            ast.setType(type);
+        } else {
+            types = set(types, ast, type);
+        }
+    }
+
+    public Environment.Variable getVariable(Ast.Global ast) {
+        return inPlace ? ast.getVariable() : get(variables, ast, "variable");
+    }
+
+    public Environment.Variable getVariable(Ast.Statement.Declaration ast) {
+        return inPlace ? ast.getVariable() : get(variables, ast, "variable");
+    }
+
+    public Environment.Variable getVariable(Ast.Expression.Access ast) {
+        return inPlace ? ast.getVariable() : get(variables, ast, "variable");
+    }
+
+    public void setVariable(Ast.Global ast, Environment.Variable variable) {
+        if (inPlace) {
+            ast.setVariable(variable);
+        } else {
+            variables = set(variables, ast, variable);
+        }
+    }
+
+    public void setVariable(Ast.Statement.Declaration ast, Environment.Variable variable) {
+        if (inPlace) {
+            ast.setVariable(variable);
+        } else {
+            variables = set(variables, ast, variable);
+        }
+    }
+
+    public void setVariable(Ast.Expression.Access ast, Environment.Variable variable) {
+        if (inPlace) {
+            ast.setVariable(variable);
+        } else {
+            variables = set(variables, ast, variable);
+        }
+    }
+
+    public Environment.Function getFunction(Ast.Function ast) {
+        return inPlace ? ast.getFunction() : get(functions, ast, "function");
+    }
+
+    public Environment.Function getFunction(Ast.Expression.Function ast) {
+        return inPlace ? ast.getFunction() : get(functions, ast, "function");
+    }
+
+    public void setFunction(Ast.Function ast, Environment.Function function) {
+        if (inPlace) {
+            ast.setFunction(function);
+        } else {
+            functions = set(functions, ast, function);
+        }
+    }
+
+    public void setFunction(Ast.Expression.Function ast, Environment.Function function) {
+        if (inPlace) {
+            ast.setFunction(function);
+        } else {
+            functions = set(functions, ast, function);
+        }
+    }
+
+    private static <T> T get(T[] table, Ast ast, String name) {
+        int id = checkId(ast);
+        if (id >= table.length || table[id] == null) {
+            throw new IllegalStateException(name + " is uninitialized");
+        }
+        return table[id];
+    }
+
+    private static <T> T[] set(T[] table, Ast ast, T value) {
+        int id = checkId(ast);
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, Math.max(id + 1, table.length + (table.length >> 1)));
+        }
+        table[id] = value;
+        return table;
+    }
+
+    private static int checkId(Ast ast) {
+        if (ast.getId() < 0) {
+            throw new IllegalArgumentException("A " + ast.getClass().getSimpleName() + " node without an id must be analyzed in place.");
+        }
+        return ast.getId();
+    }
+
+}
@@ -15,16 +15,36 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     public Scope scope;
     private Ast.Function function;
+    private final Analysis analysis;
+    private final NodeSymbols symbols = new NodeSymbols();
 
+    /**
+     * Creates an analyzer which stores its results in the AST, see {@link
+     * Analysis#inPlace()}.
+     */
     public Analyzer(Scope parent) {
+        this(parent, Analysis.inPlace());
+    }
+
+    /**
+     * Creates an analyzer which stores its results in {@code analysis}. With
+     * side tables the AST is not modified, so the same parsed AST can be
+     * analyzed by other analyzers at the same time.
+     */
+    public Analyzer(Scope parent, Analysis analysis) {
         scope = new Scope(parent);
         scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
+        this.analysis = analysis;
     }
 
     public Scope getScope() {
         return scope;
     }
 
+    public Analysis getAnalysis() {
+        return analysis;
+    }
+
     @Override
     public Void visit(Ast.Source ast) {
 
@@ -50,16 +70,16 @@ public final class Analyzer implements Ast.Visitor<Void> {
             if(ast.getValue().get() instanceof Ast.Expression.PlcList)
             {
                 Ast.Expression.PlcList temp = (Ast.Expression.PlcList) ast.getValue().get();
-                temp.setType(type);
+                analysis.setType(temp, type);
             }
 
             visit(ast.getValue().get());
-            ast.setVariable(scope.defineVariable(ast.getName(), ast.getName(), type, ast.getMutable(), Environment.NIL));
-            requireAssignable(type, ast.getValue().get().getType());
+            analysis.setVariable(ast, scope.defineVariable(symbols.get(ast, scope.getSymbols()), ast.getName(), type, ast.getMutable(), Environment.NIL));
+            requireAssignable(type, analysis.getType(ast.getValue().get()));
         }
         else
         {
-            ast.setVariable(scope.defineVariable(ast.getName(), ast.getName(), type, ast.getMutable(), Environment.NIL));
+            analysis.setVariable(ast, scope.defineVariable(symbols.get(ast, scope.getSymbols()), ast.getName(), type, ast.getMutable(), Environment.NIL));
         }
 
         return null;
@@ -77,14 +97,14 @@ public final class Analyzer implements Ast.Visitor<Void> {
         if (ast.getReturnTypeName().isPresent())
             returnType = Environment.getType(ast.getReturnTypeName().get());
 
-        ast.setFunction(scope.defineFunction(ast.getName(), ast.getName(), parameterTypes, returnType, args->Environment.NIL));
+        analysis.setFunction(ast, scope.defineFunction(symbols.get(ast, scope.getSymbols()), ast.getName(), parameterTypes, returnType, args->Environment.NIL));
 
         try
         {
             scope = new Scope(scope);
 
             for (int i = 0; i < ast.getParameters().size(); i++)
-                scope.defineVariable(ast.getParameters().get(i), ast.getParameters().get(i), parameterTypes.get(i), true, Environment.NIL );
+                scope.defineVariable(symbols.getParameter(ast, i, scope.getSymbols()), ast.getParameters().get(i), parameterTypes.get(i), true, Environment.NIL );
 
             for (Ast.Statement statements : ast.getStatements())
             {
@@ -92,7 +112,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
                 if (statements instanceof Ast.Statement.Return)
                 {
-                    requireAssignable(returnType, ((Ast.Statement.Return) statements).getValue().getType());
+                    requireAssignable(returnType, analysis.getType(((Ast.Statement.Return) statements).getValue()));
                     break;
                 }
             }
@@ -132,12 +152,12 @@ public final class Analyzer implements Ast.Visitor<Void> {
             visit(ast.getValue().get());
 
             if (type == null)
-                type = ast.getValue().get().getType();
+                type = analysis.getType(ast.getValue().get());
 
-            requireAssignable(type, ast.getValue().get().getType());
+            requireAssignable(type, analysis.getType(ast.getValue().get()));
         }
 
-        ast.setVariable(scope.defineVariable(ast.getName(), ast.getName(), type, true, Environment.NIL));
+        analysis.setVariable(ast, scope.defineVariable(symbols.get(ast, scope.getSymbols()), ast.getName(), type, true, Environment.NIL));
 
         return null;
     }
@@ -151,7 +171,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         visit(ast.getReceiver());
         visit(ast.getValue());
 
-        requireAssignable(ast.getReceiver().getType(), ast.getValue().getType());
+        requireAssignable(analysis.getType(ast.getReceiver()), analysis.getType(ast.getValue()));
 
         return null;
     }
@@ -160,7 +180,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Void visit(Ast.Statement.If ast) {
 
         visit(ast.getCondition());
-        if (!(ast.getCondition().getType().equals(Environment.Type.BOOLEAN)))
+        if (!(analysis.getType(ast.getCondition()).equals(Environment.Type.BOOLEAN)))
             throw new RuntimeException("While loop condition must be a boolean value");
         if (ast.getThenStatements().isEmpty())
             throw new RuntimeException("Missing then statements in if");
@@ -196,7 +216,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Void visit(Ast.Statement.Switch ast) {
 
         visit(ast.getCondition());
-        Environment.Type conditionType = ast.getCondition().getType();
+        Environment.Type conditionType = analysis.getType(ast.getCondition());
 
         for (int i = 0; i < ast.getCases().size() - 1; i++)
         {
@@ -206,7 +226,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
             visit(ast.getCases().get(i).getValue().get());
 
-            if (!(ast.getCases().get(i).getValue().get().getType().equals(conditionType)))
+            if (!(analysis.getType(ast.getCases().get(i).getValue().get()).equals(conditionType)))
                 throw new RuntimeException("Error in ast.statement.switch");
         }
 
@@ -245,7 +265,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Void visit(Ast.Statement.While ast) {
 
         visit(ast.getCondition());
-        if (!(ast.getCondition().getType().equals(Environment.Type.BOOLEAN)))
+        if (!(analysis.getType(ast.getCondition()).equals(Environment.Type.BOOLEAN)))
             throw new RuntimeException("While loop condition must be a boolean value");
 
         try
@@ -278,33 +298,33 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
         if (literal.equals(Environment.NIL))
         {
-            ast.setType(Environment.Type.NIL);
+            analysis.setType(ast, Environment.Type.NIL);
         }
         else if (literal instanceof Boolean)
         {
-            ast.setType(Environment.Type.BOOLEAN);
+            analysis.setType(ast, Environment.Type.BOOLEAN);
         }
         else if (literal instanceof  Character)
         {
-            ast.setType(Environment.Type.CHARACTER);
+            analysis.setType(ast, Environment.Type.CHARACTER);
         }
         else if (literal instanceof String)
         {
-            ast.setType(Environment.Type.STRING);
+            analysis.setType(ast, Environment.Type.STRING);
         }
         else if (literal instanceof BigInteger)
         {
             if (((BigInteger) literal).bitLength() > 31)
                 throw new RuntimeException("Integer out of bounds, greater than 32-bit signed value");
 
-            ast.setType(Environment.Type.INTEGER);
+            analysis.setType(ast, Environment.Type.INTEGER);
         }
         else if (literal instanceof BigDecimal)
         {
             if (Double.isInfinite(((BigDecimal) literal).doubleValue()))
                 throw new RuntimeException("Decimal out of bounds, greater than 64-bit signed value");
 
-            ast.setType(Environment.Type.DECIMAL);
+            analysis.setType(ast, Environment.Type.DECIMAL);
         }
         else
         {
@@ -321,7 +341,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             throw new RuntimeException("Contained expression must be a binary expression");
 
         visit(ast.getExpression());
-        ast.setType(ast.getExpression().getType());
+        analysis.setType(ast, analysis.getType(ast.getExpression()));
 
         return null;
     }
@@ -332,15 +352,15 @@ public final class Analyzer implements Ast.Visitor<Void> {
         String op = ast.getOperator();
         visit(ast.getLeft());
         visit(ast.getRight());
-        Environment.Type leftType = ast.getLeft().getType();
-        Environment.Type rightType = ast.getRight().getType();
+        Environment.Type leftType = analysis.getType(ast.getLeft());
+        Environment.Type rightType = analysis.getType(ast.getRight());
 
         if (op.equals("&&") || op.equals("||"))
         {
             requireAssignable(Environment.Type.BOOLEAN, leftType);
             requireAssignable(Environment.Type.BOOLEAN, rightType);
 
-            ast.setType(Environment.Type.BOOLEAN);
+            analysis.setType(ast, Environment.Type.BOOLEAN);
         }
 
         else if (op.equals("<") || op.equals(">") || op.equals("==") || op.equals("!="))
@@ -351,22 +371,22 @@ public final class Analyzer implements Ast.Visitor<Void> {
             if (!leftType.equals(rightType))
                 throw new RuntimeException("Both operands are not the same comparable type");
 
-            ast.setType(Environment.Type.BOOLEAN);
+            analysis.setType(ast, Environment.Type.BOOLEAN);
         }
 
         else if (op.equals("+"))
         {
             if (leftType.equals(Environment.Type.STRING) || rightType.equals(Environment.Type.STRING))
             {
-                ast.setType(Environment.Type.STRING);
+                analysis.setType(ast, Environment.Type.STRING);
             }
 
             else
             {
                 if (leftType.equals(Environment.Type.INTEGER) && rightType.equals(Environment.Type.INTEGER))
-                    ast.setType(Environment.Type.INTEGER);
+                    analysis.setType(ast, Environment.Type.INTEGER);
                 else if (leftType.equals(Environment.Type.DECIMAL) && rightType.equals(Environment.Type.DECIMAL))
-                    ast.setType(Environment.Type.DECIMAL);
+                    analysis.setType(ast, Environment.Type.DECIMAL);
                 else
                     throw new RuntimeException("Invalid operand types");
             }
@@ -375,9 +395,9 @@ public final class Analyzer implements Ast.Visitor<Void> {
         else if (op.equals("-") || op.equals("*") || op.equals("/"))
         {
             if (leftType.equals(Environment.Type.INTEGER) && rightType.equals(Environment.Type.INTEGER))
-                ast.setType(Environment.Type.INTEGER);
+                analysis.setType(ast, Environment.Type.INTEGER);
             else if (leftType.equals(Environment.Type.DECIMAL) && rightType.equals(Environment.Type.DECIMAL))
-                ast.setType(Environment.Type.DECIMAL);
+                analysis.setType(ast, Environment.Type.DECIMAL);
             else
                 throw new RuntimeException("Invalid operand types");
         }
@@ -387,7 +407,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             if (!(leftType.equals(Environment.Type.INTEGER) && rightType.equals(Environment.Type.INTEGER)))
                 throw new RuntimeException("Invalid operand types, expected INTEGER");
 
-            ast.setType(Environment.Type.INTEGER);
+            analysis.setType(ast, Environment.Type.INTEGER);
         }
 
         else
@@ -402,10 +422,10 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Void visit(Ast.Expression.Access ast) {
 
         if (ast.getOffset().isPresent())
-            if (!(ast.getOffset().get().getType().equals(Environment.Type.INTEGER)))
+            if (!(analysis.getType(ast.getOffset().get()).equals(Environment.Type.INTEGER)))
                 throw new RuntimeException("Invalid access offset");
 
-        ast.setVariable(scope.lookupVariable(ast.getName()));
+        analysis.setVariable(ast, scope.lookupVariable(symbols.get(ast, scope.getSymbols())));
 
         return null;
     }
@@ -413,12 +433,12 @@ public final class Analyzer implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Expression.Function ast) {
 
-        ast.setFunction(scope.lookupFunction(ast.getName(), ast.getArguments().size()));
+        analysis.setFunction(ast, scope.lookupFunction(symbols.get(ast, scope.getSymbols()), ast.getArguments().size()));
 
-        for (int i = 0; i < ast.getFunction().getArity(); i++)
+        for (int i = 0; i < analysis.getFunction(ast).getArity(); i++)
         {
             visit(ast.getArguments().get(i));
-            requireAssignable(ast.getFunction().getParameterTypes().get(i), ast.getArguments().get(i).getType());
+            requireAssignable(analysis.getFunction(ast).getParameterTypes().get(i), analysis.getType(ast.getArguments().get(i)));
         }
 
         return null;
@@ -430,7 +450,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         for (Ast.Expression i : ast.getValues())
         {
             visit(i);
-            requireAssignable(ast.getType(), i.getType());
+            requireAssignable(analysis.getType(ast), analysis.getType(i));
         }
 
         return null;
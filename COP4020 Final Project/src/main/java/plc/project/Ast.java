@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See the Parser assignment specification for specific notes on each AST class
@@ -11,6 +12,64 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * Calls the {@link Visitor} method for this node's class. Each class
+     * overrides this to select its overload statically, so dispatch is a
+     * single virtual call rather than a chain of type checks.
+     */
+    public abstract <T> T accept(Visitor<T> visitor);
+
+    private int id = -1;
+
+    /**
+     * Returns the id assigned by the {@link Parser}, or -1 for a node built
+     * directly. Ids are unique within the nodes of one parser and numbered
+     * densely from 0, so they can index side tables such as those of {@link
+     * Analysis}.
+     */
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    private Digest digest = null;
+
+    /**
+     * Returns the structural digest of the node, which covers its syntax but
+     * not the results of analysis. It is computed from the digests of the
+     * children the first time it is needed and kept on the node, so a subtree
+     * is only digested once and comparing the digests of two subtrees, such
+     * as a function before and after an edit, takes constant time. The
+     * digest of a deferred {@link Ast.Function} parses its body.
+     *
+     * The node and its lists must not be modified once the digest has been
+     * computed. {@link Digest} is immutable, so concurrent callers at worst
+     * compute the same digest twice.
+     */
+    public final Digest getDigest() {
+        Digest digest = this.digest;
+        if (digest == null) {
+            digest = this.digest = computeDigest();
+        }
+        return digest;
+    }
+
+    abstract Digest computeDigest();
+
+    /**
+     * Returns a hash of {@link #getDigest()}, which is consistent with {@link
+     * #equals(Object)} since equal nodes have equal syntax. {@link
+     * Ast.Function} and {@link Source} hash without the function bodies, so
+     * hashing never parses a deferred body.
+     */
+    @Override
+    public int hashCode() {
+        return getDigest().hashCode();
+    }
+
     public static final class Source extends Ast {
 
         private final List<Global> globals;
@@ -29,6 +88,16 @@ public abstract class Ast {
             return functions;
         }
 
+        @Override
+        Digest computeDigest() {
+            return new Digest.Builder(1).addAll(globals).addAll(functions).build();
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Source &&
@@ -36,6 +105,11 @@ public abstract class Ast {
                     functions.equals(((Source) obj).functions);
         }
 
+        @Override
+        public int hashCode() {
+            return 31 * globals.hashCode() + functions.hashCode();
+        }
+
         @Override
         public String toString() {
             return "Ast.Source{" +
@@ -94,6 +168,16 @@ public abstract class Ast {
         }
 
 
+        @Override
+        Digest computeDigest() {
+            return new Digest.Builder(2).add(name).add(typeName).add(mutable).add(value).build();
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Global &&
@@ -123,9 +207,10 @@ public abstract class Ast {
         private final List<String> parameters;
         private final List<String> parameterTypeNames;
         private final Optional<String> returnTypeName;
-        private final List<Statement> statements;
+        private volatile List<Statement> statements;
+        private Supplier<List<Statement>> body;
         private Environment.Function function = null;
-        
+
         public Function(String name, List<String> parameters, List<Statement> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
             for (int i = 0; i < parameters.size(); i++) {
@@ -142,6 +227,16 @@ public abstract class Ast {
             this.statements = statements;
         }
 
+        /**
+         * Creates a function whose statements are produced by {@code body} the
+         * first time {@link #getStatements()} is called, which is how {@link
+         * Parser#setLazy(boolean)} defers parsing function bodies.
+         */
+        public Function(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, Supplier<List<Statement>> body) {
+            this(name, parameters, parameterTypeNames, returnTypeName, (List<Statement>) null);
+            this.body = body;
+        }
+
         public String getName() {
             return name;
         }
@@ -158,10 +253,32 @@ public abstract class Ast {
             return returnTypeName;
         }
 
+        /**
+         * Returns the statements of the body, parsing it first if it was
+         * deferred. A deferred body which is invalid throws its {@link
+         * ParseException} here, on each call until it parses.
+         */
         public List<Statement> getStatements() {
+            List<Statement> statements = this.statements;
+            if (statements == null) {
+                synchronized (this) {
+                    if (this.statements == null) {
+                        this.statements = body.get();
+                        body = null;
+                    }
+                    statements = this.statements;
+                }
+            }
             return statements;
         }
 
+        /**
+         * Returns true if the body has not been parsed yet.
+         */
+        public boolean isDeferred() {
+            return statements == null;
+        }
+
         public Environment.Function getFunction() {
             if (function == null) {
                 throw new IllegalStateException("function is uninitialized");
@@ -174,6 +291,21 @@ public abstract class Ast {
         }
 
 
+        @Override
+        Digest computeDigest() {
+            return new Digest.Builder(3).add(name).addStrings(parameters).addStrings(parameterTypeNames).add(returnTypeName.orElse(null)).addAll(getStatements()).build();
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+        /**
+         * Compares the functions including their bodies, so a deferred body
+         * is parsed, or decoded if loaded by {@link AstFormat}, and its
+         * exception is thrown here if it is invalid.
+         */
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Ast.Function &&
@@ -181,11 +313,24 @@ public abstract class Ast {
                     parameters.equals(((Ast.Function) obj).parameters) &&
                     parameterTypeNames.equals(((Ast.Function) obj).parameterTypeNames) &&
                     returnTypeName.equals(((Ast.Function) obj).returnTypeName) &&
-                    statements.equals(((Ast.Function) obj).statements) &&
+                    getStatements().equals(((Ast.Function) obj).getStatements()) &&
                     Objects.equals(function, ((Ast.Function) obj).function);
         }
 
+        /**
+         * Hashes the signature only, so a deferred body is not parsed and the
+         * hash is the same before and after it is.
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, parameters, parameterTypeNames, returnTypeName);
+        }
+
 
+        /**
+         * Prints the function without parsing a deferred body, which is shown
+         * as {@code <deferred>}.
+         */
         @Override
         public String toString() {
             return "Ast.Function{" +
@@ -193,7 +338,7 @@ public abstract class Ast {
                     ", parameters=" + parameters +
                     ", parameterTypeNames=" + parameterTypeNames +
                     ", returnTypeName='" + returnTypeName + '\'' +
-                    ", statements=" + statements +
+                    ", statements=" + (isDeferred() ? "<deferred>" : statements) +
                     ", function=" + function +
                     '}';
         }
@@ -214,6 +359,16 @@ public abstract class Ast {
                 return expression;
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(4).add(expression).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Statement.Expression &&
@@ -270,6 +425,16 @@ public abstract class Ast {
             }
             
             
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(5).add(name).add(typeName.orElse(null)).add(value).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -309,6 +474,16 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(6).add(receiver).add(value).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Assignment &&
@@ -351,6 +526,16 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(7).add(condition).addAll(thenStatements).addAll(elseStatements).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof If &&
@@ -386,6 +571,16 @@ public abstract class Ast {
 
             public List<Ast.Statement.Case> getCases() { return cases; }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(8).add(condition).addAll(cases).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Switch &&
@@ -421,6 +616,16 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(9).add(value).addAll(statements).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Case &&
@@ -456,6 +661,16 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(10).add(condition).addAll(statements).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof While &&
@@ -485,6 +700,16 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(11).add(value).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Return &&
@@ -533,6 +758,16 @@ public abstract class Ast {
 
 
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(12).addLiteral(literal).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Literal &&
@@ -576,6 +811,16 @@ public abstract class Ast {
             }
 
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(13).add(expression).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Group &&
@@ -631,6 +876,16 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(14).add(operator).add(left).add(right).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Binary &&
@@ -688,6 +943,16 @@ public abstract class Ast {
                 return getVariable().getType();
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(15).add(offset).add(name).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Access &&
@@ -743,6 +1008,16 @@ public abstract class Ast {
                 return getFunction().getReturnType();
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(16).add(name).addAll(arguments).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Expression.Function &&
@@ -788,6 +1063,16 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            Digest computeDigest() {
+                return new Digest.Builder(17).addAll(values).build();
+            }
+
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Expression.PlcList &&
@@ -810,43 +1095,7 @@ public abstract class Ast {
     public interface Visitor<T> {
 
         default T visit(Ast ast) {
-            if (ast instanceof Ast.Source) {
-                return visit((Ast.Source) ast);
-            } else if (ast instanceof Ast.Global) {
-                return visit((Ast.Global) ast);
-            } else if (ast instanceof Ast.Function) {
-                return visit((Ast.Function) ast);
-            } else if (ast instanceof Ast.Statement.Expression) {
-                return visit((Ast.Statement.Expression) ast);
-            } else if (ast instanceof Ast.Statement.Declaration) {
-                return visit((Ast.Statement.Declaration) ast);
-            } else if (ast instanceof Ast.Statement.Assignment) {
-                return visit((Ast.Statement.Assignment) ast);
-            } else if (ast instanceof Ast.Statement.If) {
-                return visit((Ast.Statement.If) ast);
-            } else if (ast instanceof Ast.Statement.Switch) {
-                return visit((Ast.Statement.Switch) ast);
-            } else if (ast instanceof Ast.Statement.Case) {
-                return visit((Ast.Statement.Case) ast);
-            } else if (ast instanceof Ast.Statement.While) {
-                return visit((Ast.Statement.While) ast);
-            } else if (ast instanceof Ast.Statement.Return) {
-                return visit((Ast.Statement.Return) ast);
-            } else if (ast instanceof Ast.Expression.Literal) {
-                return visit((Ast.Expression.Literal) ast);
-            } else if (ast instanceof Ast.Expression.Group) {
-                return visit((Ast.Expression.Group) ast);
-            } else if (ast instanceof Ast.Expression.Binary) {
-                return visit((Ast.Expression.Binary) ast);
-            } else if (ast instanceof Ast.Expression.Access) {
-                return visit((Ast.Expression.Access) ast);
-            } else if (ast instanceof Ast.Expression.Function) {
-                return visit((Ast.Expression.Function) ast);
-            } else if (ast instanceof Ast.Expression.PlcList) {
-                return visit((Ast.Expression.PlcList) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
-            }
+            return ast.accept(this);
         }
 
         T visit(Ast.Source ast);
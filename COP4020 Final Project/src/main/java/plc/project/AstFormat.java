@@ -0,0 +1,719 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A compact binary encoding of an {@link Ast.Source}, so a process which runs
+ * the same scripts repeatedly can load their ASTs instead of lexing and
+ * parsing them again:
+ *
+ * <pre>{@code
+ * Digest key = Digest.of(input);
+ * Ast.Source ast = AstFormat.load(path, key);
+ * if (ast == null) {
+ *     ast = new Parser(new Lexer(input).lexBuffer()).parseSource();
+ *     AstFormat.write(ast, key, path);
+ * }
+ * }</pre>
+ *
+ * A file starts with a header of the magic bytes {@code PLCA}, the format
+ * {@link #VERSION} and the {@link Digest} of the source text. It is followed
+ * by a pool of the distinct names, operators and literal values, and then the
+ * nodes in pre-order. Each node is its kind followed by its fields and
+ * children, with names and literals as indices into the pool and lists
+ * prefixed with their size. All integers are unsigned LEB128 varints, so most
+ * take a single byte. The statements of each function are prefixed with their
+ * length in bytes, so {@link #load(Path, Digest)} can skip them and decode
+ * them the first time {@link Ast.Function#getStatements()} is called.
+ *
+ * Loaded nodes are numbered as the {@link Parser} numbers them, so they can be
+ * analyzed with an {@link Analysis}. Analysis results are not stored.
+ */
+public final class AstFormat {
+
+    /**
+     * The version of the encoding, which is increased whenever it changes.
+     * Files of other versions are not loaded.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'P', 'L', 'C', 'A'};
+
+    private static final int SOURCE = 0;
+    private static final int GLOBAL = 1;
+    private static final int FUNCTION = 2;
+    private static final int EXPRESSION = 3;
+    private static final int DECLARATION = 4;
+    private static final int ASSIGNMENT = 5;
+    private static final int IF = 6;
+    private static final int SWITCH = 7;
+    private static final int CASE = 8;
+    private static final int WHILE = 9;
+    private static final int RETURN = 10;
+    private static final int LITERAL = 11;
+    private static final int GROUP = 12;
+    private static final int BINARY = 13;
+    private static final int ACCESS = 14;
+    private static final int CALL = 15;
+    private static final int LIST = 16;
+
+    private static final int NIL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int CHARACTER = 3;
+    private static final int STRING = 4;
+    private static final int INTEGER = 5;
+    private static final int DECIMAL = 6;
+
+    private AstFormat() {}
+
+    /**
+     * Encodes the AST, recording {@code source} as the digest of the text it
+     * was parsed from. Deferred function bodies are parsed.
+     */
+    public static byte[] encode(Ast.Source ast, Digest source) {
+        Writer writer = new Writer();
+        writer.visit(ast);
+        Output output = new Output();
+        output.write(MAGIC);
+        output.writeVarint(VERSION);
+        output.writeLong(source.getHigh());
+        output.writeLong(source.getLow());
+        output.writeVarint(writer.constants.size());
+        for (Object constant : writer.constants) {
+            output.writeConstant(constant);
+        }
+        output.write(writer.output.toByteArray());
+        return output.toByteArray();
+    }
+
+    /**
+     * Encodes the AST to {@code path}. The file is written next to it and
+     * then moved into place, so a concurrent {@link #load(Path, Digest)} never
+     * sees a partial file.
+     */
+    public static void write(Ast.Source ast, Digest source, Path path) throws IOException {
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, encode(ast, source));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Decodes an encoded AST in full, regardless of its source digest.
+     */
+    public static Ast.Source decode(ByteBuffer buffer) throws IOException {
+        return read(buffer, null, false);
+    }
+
+    /**
+     * Maps the file at {@code path} and decodes its AST if it was encoded
+     * from source text with the digest {@code source}, or returns {@code null}
+     * if it cannot be used: the file does not exist, is for other source
+     * text, is of another {@link #VERSION}, or is truncated or otherwise not
+     * a valid encoding. Callers can then parse the source and {@link
+     * #write(Ast.Source, Digest, Path)} it again. Function bodies are decoded
+     * from the mapping when first used; if the file has been corrupted since,
+     * they throw an {@link UncheckedIOException} then.
+     *
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static Ast.Source load(Path path, Digest source) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            return read(buffer, source, true);
+        } catch (IOException e) {
+            return null; // an invalid or outdated file is a miss, like other source text
+        }
+    }
+
+    /**
+     * Returns the digest of the source text recorded in the header.
+     */
+    public static Digest getSourceDigest(ByteBuffer buffer) throws IOException {
+        return readHeader(buffer.duplicate());
+    }
+
+    private static Ast.Source read(ByteBuffer buffer, Digest source, boolean lazy) throws IOException {
+        buffer = buffer.duplicate();
+        try {
+            Digest digest = readHeader(buffer);
+            if (source != null && !source.equals(digest)) {
+                return null;
+            }
+            Input input = new Input(buffer);
+            Object[] constants = new Object[input.readCount()];
+            for (int i = 0; i < constants.length; i++) {
+                constants[i] = input.readConstant();
+            }
+            Reader reader = new Reader(buffer, constants, new AtomicInteger(), lazy);
+            return reader.readSource();
+        } catch (BufferUnderflowException | IllegalArgumentException | ClassCastException e) {
+            throw new IOException("The encoded AST is invalid.", e);
+        }
+    }
+
+    private static Digest readHeader(ByteBuffer buffer) throws IOException {
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("The file is not an encoded AST.");
+            }
+            int version = new Input(buffer).readVarint();
+            if (version != VERSION) {
+                throw new IOException("The encoded AST is version " + version + ", expected " + VERSION + ".");
+            }
+            return new Digest(buffer.getLong(), buffer.getLong());
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("The encoded AST is truncated.", e);
+        }
+    }
+
+    /**
+     * Encodes nodes in pre-order, adding names and literals to the pool.
+     */
+    private static final class Writer implements Ast.Visitor<Void> {
+
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> pool = new HashMap<>();
+        private Output output = new Output();
+
+        private int constant(Object value) {
+            Integer index = pool.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                pool.put(value, index);
+            }
+            return index;
+        }
+
+        private void writeString(String string) {
+            output.writeVarint(constant(string));
+        }
+
+        /**
+         * Writes an optional string as 0 if absent, or one more than its index.
+         */
+        private void writeOptional(Optional<String> string) {
+            output.writeVarint(string.isPresent() ? constant(string.get()) + 1 : 0);
+        }
+
+        private void writeExpression(Optional<Ast.Expression> expression) {
+            output.writeVarint(expression.isPresent() ? 1 : 0);
+            expression.ifPresent(this::visit);
+        }
+
+        private void writeAll(List<? extends Ast> asts) {
+            output.writeVarint(asts.size());
+            for (Ast ast : asts) {
+                visit(ast);
+            }
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            output.writeVarint(SOURCE);
+            writeAll(ast.getGlobals());
+            writeAll(ast.getFunctions());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Global ast) {
+            output.writeVarint(GLOBAL);
+            writeString(ast.getName());
+            writeString(ast.getTypeName());
+            output.writeVarint(ast.getMutable() ? 1 : 0);
+            writeExpression(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Function ast) {
+            output.writeVarint(FUNCTION);
+            writeString(ast.getName());
+            output.writeVarint(ast.getParameters().size());
+            for (int i = 0; i < ast.getParameters().size(); i++) {
+                writeString(ast.getParameters().get(i));
+                writeString(ast.getParameterTypeNames().get(i));
+            }
+            writeOptional(ast.getReturnTypeName());
+            Output function = output;
+            output = new Output();
+            writeAll(ast.getStatements());
+            byte[] body = output.toByteArray();
+            output = function;
+            output.writeVarint(body.length);
+            output.write(body);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            output.writeVarint(EXPRESSION);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            output.writeVarint(DECLARATION);
+            writeString(ast.getName());
+            writeOptional(ast.getTypeName());
+            writeExpression(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            output.writeVarint(ASSIGNMENT);
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            output.writeVarint(IF);
+            visit(ast.getCondition());
+            writeAll(ast.getThenStatements());
+            writeAll(ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Switch ast) {
+            output.writeVarint(SWITCH);
+            visit(ast.getCondition());
+            writeAll(ast.getCases());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Case ast) {
+            output.writeVarint(CASE);
+            writeExpression(ast.getValue());
+            writeAll(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            output.writeVarint(WHILE);
+            visit(ast.getCondition());
+            writeAll(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            output.writeVarint(RETURN);
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            output.writeVarint(LITERAL);
+            output.writeVarint(constant(ast.getLiteral()));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            output.writeVarint(GROUP);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            output.writeVarint(BINARY);
+            writeString(ast.getOperator());
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            output.writeVarint(ACCESS);
+            writeString(ast.getName());
+            writeExpression(ast.getOffset());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            output.writeVarint(CALL);
+            writeString(ast.getName());
+            writeAll(ast.getArguments());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.PlcList ast) {
+            output.writeVarint(LIST);
+            writeAll(ast.getValues());
+            return null;
+        }
+
+    }
+
+    /**
+     * Decodes the nodes written by {@link Writer}, numbering them from the
+     * shared counter as they are created.
+     */
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private final Input input;
+        private final Object[] constants;
+        private final AtomicInteger ids;
+        private final boolean lazy;
+
+        private Reader(ByteBuffer buffer, Object[] constants, AtomicInteger ids, boolean lazy) {
+            this.buffer = buffer;
+            this.input = new Input(buffer);
+            this.constants = constants;
+            this.ids = ids;
+            this.lazy = lazy;
+        }
+
+        private <T extends Ast> T node(T ast) {
+            ast.setId(ids.getAndIncrement());
+            return ast;
+        }
+
+        private String readString() {
+            return (String) constants[input.readVarint()];
+        }
+
+        private Optional<String> readOptional() {
+            int index = input.readVarint();
+            return index == 0 ? Optional.empty() : Optional.of((String) constants[index - 1]);
+        }
+
+        private Optional<Ast.Expression> readOptionalExpression() {
+            return input.readVarint() != 0 ? Optional.of(readExpression()) : Optional.empty();
+        }
+
+        private void expect(int kind) {
+            int actual = input.readVarint();
+            if (actual != kind) {
+                throw new IllegalArgumentException("Expected node kind " + kind + ", received " + actual + ".");
+            }
+        }
+
+        private Ast.Source readSource() {
+            expect(SOURCE);
+            List<Ast.Global> globals = new ArrayList<>();
+            for (int i = input.readCount(); i > 0; i--) {
+                globals.add(readGlobal());
+            }
+            List<Ast.Function> functions = new ArrayList<>();
+            for (int i = input.readCount(); i > 0; i--) {
+                functions.add(readFunction());
+            }
+            return node(new Ast.Source(globals, functions));
+        }
+
+        private Ast.Global readGlobal() {
+            expect(GLOBAL);
+            String name = readString();
+            String typeName = readString();
+            boolean mutable = input.readVarint() != 0;
+            return node(new Ast.Global(name, typeName, mutable, readOptionalExpression()));
+        }
+
+        private Ast.Function readFunction() {
+            expect(FUNCTION);
+            String name = readString();
+            int count = input.readCount();
+            List<String> parameters = new ArrayList<>(count);
+            List<String> parameterTypeNames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                parameters.add(readString());
+                parameterTypeNames.add(readString());
+            }
+            Optional<String> returnTypeName = readOptional();
+            int length = input.readCount();
+            if (!lazy) {
+                return node(new Ast.Function(name, parameters, parameterTypeNames, returnTypeName, readStatements()));
+            }
+            Reader body = new Reader(buffer.duplicate(), constants, ids, true);
+            buffer.position(buffer.position() + length);
+            return node(new Ast.Function(name, parameters, parameterTypeNames, returnTypeName, body::readBody));
+        }
+
+        /**
+         * Decodes a function body skipped by a lazy load.
+         */
+        private List<Ast.Statement> readBody() {
+            try {
+                return readStatements();
+            } catch (BufferUnderflowException | IllegalArgumentException | ClassCastException e) {
+                throw new UncheckedIOException(new IOException("The encoded AST is invalid.", e));
+            }
+        }
+
+        private List<Ast.Statement> readStatements() {
+            int count = input.readCount();
+            List<Ast.Statement> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(readStatement());
+            }
+            return statements;
+        }
+
+        private Ast.Statement readStatement() {
+            int kind = input.readVarint();
+            switch (kind) {
+                case EXPRESSION:
+                    return node(new Ast.Statement.Expression(readExpression()));
+                case DECLARATION: {
+                    String name = readString();
+                    Optional<String> typeName = readOptional();
+                    return node(new Ast.Statement.Declaration(name, typeName, readOptionalExpression()));
+                }
+                case ASSIGNMENT: {
+                    Ast.Expression receiver = readExpression();
+                    return node(new Ast.Statement.Assignment(receiver, readExpression()));
+                }
+                case IF: {
+                    Ast.Expression condition = readExpression();
+                    List<Ast.Statement> thenStatements = readStatements();
+                    return node(new Ast.Statement.If(condition, thenStatements, readStatements()));
+                }
+                case SWITCH: {
+                    Ast.Expression condition = readExpression();
+                    int count = input.readCount();
+                    List<Ast.Statement.Case> cases = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        expect(CASE);
+                        Optional<Ast.Expression> value = readOptionalExpression();
+                        cases.add(node(new Ast.Statement.Case(value, readStatements())));
+                    }
+                    return node(new Ast.Statement.Switch(condition, cases));
+                }
+                case WHILE: {
+                    Ast.Expression condition = readExpression();
+                    return node(new Ast.Statement.While(condition, readStatements()));
+                }
+                case RETURN:
+                    return node(new Ast.Statement.Return(readExpression()));
+                default:
+                    throw new IllegalArgumentException("Invalid statement kind " + kind + ".");
+            }
+        }
+
+        private Ast.Expression readExpression() {
+            int kind = input.readVarint();
+            switch (kind) {
+                case LITERAL:
+                    return node(new Ast.Expression.Literal(constants[input.readVarint()]));
+                case GROUP:
+                    return node(new Ast.Expression.Group(readExpression()));
+                case BINARY: {
+                    String operator = readString();
+                    Ast.Expression left = readExpression();
+                    return node(new Ast.Expression.Binary(operator, left, readExpression()));
+                }
+                case ACCESS: {
+                    String name = readString();
+                    return node(new Ast.Expression.Access(readOptionalExpression(), name));
+                }
+                case CALL: {
+                    String name = readString();
+                    int count = input.readCount();
+                    List<Ast.Expression> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(readExpression());
+                    }
+                    return node(new Ast.Expression.Function(name, arguments));
+                }
+                case LIST: {
+                    int count = input.readCount();
+                    List<Ast.Expression> values = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        values.add(readExpression());
+                    }
+                    return node(new Ast.Expression.PlcList(values));
+                }
+                default:
+                    throw new IllegalArgumentException("Invalid expression kind " + kind + ".");
+            }
+        }
+
+    }
+
+    /**
+     * A growable byte array with the primitive encodings of the format.
+     */
+    private static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private void ensure(int capacity) {
+            if (size + capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + capacity, bytes.length * 2));
+            }
+        }
+
+        void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, this.bytes, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            write(bytes);
+        }
+
+        void writeConstant(Object constant) {
+            if (constant == null) {
+                writeVarint(NIL);
+            } else if (constant.equals(Boolean.TRUE)) {
+                writeVarint(TRUE);
+            } else if (constant.equals(Boolean.FALSE)) {
+                writeVarint(FALSE);
+            } else if (constant instanceof Character) {
+                writeVarint(CHARACTER);
+                writeVarint((Character) constant);
+            } else if (constant instanceof String) {
+                writeVarint(STRING);
+                writeBytes(((String) constant).getBytes(StandardCharsets.UTF_8));
+            } else if (constant instanceof BigInteger) {
+                writeVarint(INTEGER);
+                writeBytes(((BigInteger) constant).toByteArray());
+            } else if (constant instanceof BigDecimal) {
+                writeVarint(DECIMAL);
+                int scale = ((BigDecimal) constant).scale();
+                writeVarint(scale << 1 ^ scale >> 31);
+                writeBytes(((BigDecimal) constant).unscaledValue().toByteArray());
+            } else {
+                throw new IllegalArgumentException("Cannot encode a literal of type " + constant.getClass().getName() + ".");
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+    }
+
+    /**
+     * Reads the primitive encodings of {@link Output} from a buffer.
+     */
+    private static final class Input {
+
+        private final ByteBuffer buffer;
+
+        private Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("The varint is too long.");
+        }
+
+        /**
+         * Reads a size, which cannot exceed the remaining bytes since every
+         * element takes at least one.
+         */
+        int readCount() {
+            int count = readVarint();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid size " + count + ".");
+            }
+            return count;
+        }
+
+        byte[] readBytes() {
+            byte[] bytes = new byte[readCount()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        Object readConstant() {
+            int tag = readVarint();
+            switch (tag) {
+                case NIL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case CHARACTER:
+                    return (char) readVarint();
+                case STRING:
+                    return new String(readBytes(), StandardCharsets.UTF_8);
+                case INTEGER:
+                    return new BigInteger(readBytes());
+                case DECIMAL: {
+                    int scale = readVarint();
+                    return new BigDecimal(new BigInteger(readBytes()), scale >>> 1 ^ -(scale & 1));
+                }
+                default:
+                    throw new IllegalArgumentException("Invalid constant tag " + tag + ".");
+            }
+        }
+
+    }
+
+}
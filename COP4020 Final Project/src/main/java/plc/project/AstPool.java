@@ -0,0 +1,153 @@
+package plc.project;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shares structurally identical constant expressions between the ASTs built
+ * by parsers using the pool, see {@link Parser#setPool(AstPool)}. Generated
+ * programs often repeat the same literals and subexpressions, and with a pool
+ * each distinct one is a single object, so its value is stored once and
+ * later passes can cache results per distinct subtree.
+ *
+ * Only literals, and groups and binary expressions whose operands are shared,
+ * are shared. Their analysis does not depend on where they appear, so a
+ * shared node has the same type everywhere. Accesses resolve to a variable
+ * of the enclosing scope, calls to a function and may have side effects, and
+ * lists take the type of their declaration, so those are always created per
+ * use, as are the expressions containing them.
+ *
+ * Shared nodes are created once, as hash-consing does: the children of a
+ * candidate are already shared, so nodes are looked up by their literal or
+ * operator and the identity of their children rather than by comparing
+ * subtrees. The pool is thread-safe, so it can be used by parallel parsers
+ * and by several parsers at once. Every parser using the pool numbers its
+ * nodes from the pool's counter so that the ids of shared nodes stay unique.
+ */
+public final class AstPool {
+
+    private final ConcurrentMap<Key, Ast.Expression> nodes = new ConcurrentHashMap<>();
+    final AtomicInteger ids = new AtomicInteger();
+
+    /**
+     * Returns the number of distinct expressions in the pool.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the number of node ids assigned by the parsers using the pool,
+     * as in {@link Parser#getNodeCount()}.
+     */
+    public int getNodeCount() {
+        return ids.get();
+    }
+
+    /**
+     * Returns the shared literal for {@code literal}. Values are compared with
+     * {@link Object#equals(Object)}, so a {@link java.math.BigDecimal} of a
+     * different scale is a different literal.
+     */
+    Ast.Expression.Literal literal(Object literal) {
+        return (Ast.Expression.Literal) share(new Key(Ast.Expression.Literal.class, literal, null, null),
+                () -> new Ast.Expression.Literal(literal));
+    }
+
+    /**
+     * Returns the shared group of {@code expression}, or {@code null} if the
+     * expression is not shared.
+     */
+    Ast.Expression.Group group(Ast.Expression expression) {
+        if (!isShared(expression)) {
+            return null;
+        }
+        return (Ast.Expression.Group) share(new Key(Ast.Expression.Group.class, null, expression, null),
+                () -> new Ast.Expression.Group(expression));
+    }
+
+    /**
+     * Returns the shared binary expression, or {@code null} if either operand
+     * is not shared.
+     */
+    Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right) {
+        if (!isShared(left) || !isShared(right)) {
+            return null;
+        }
+        return (Ast.Expression.Binary) share(new Key(Ast.Expression.Binary.class, operator, left, right),
+                () -> new Ast.Expression.Binary(operator, left, right));
+    }
+
+    /**
+     * Returns true if {@code ast} is the shared instance of its expression.
+     */
+    public boolean isShared(Ast.Expression ast) {
+        Key key;
+        if (ast instanceof Ast.Expression.Literal) {
+            key = new Key(Ast.Expression.Literal.class, ((Ast.Expression.Literal) ast).getLiteral(), null, null);
+        } else if (ast instanceof Ast.Expression.Group) {
+            key = new Key(Ast.Expression.Group.class, null, ((Ast.Expression.Group) ast).getExpression(), null);
+        } else if (ast instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+            key = new Key(Ast.Expression.Binary.class, binary.getOperator(), binary.getLeft(), binary.getRight());
+        } else {
+            return false;
+        }
+        return nodes.get(key) == ast;
+    }
+
+    private Ast.Expression share(Key key, Supplier<Ast.Expression> create) {
+        Ast.Expression shared = nodes.get(key);
+        if (shared == null) {
+            Ast.Expression ast = create.get();
+            ast.setId(ids.getAndIncrement());
+            shared = nodes.putIfAbsent(key, ast);
+            if (shared == null) {
+                shared = ast;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Identifies an expression by its class, its literal or operator, and the
+     * identity of its shared children.
+     */
+    private static final class Key {
+
+        private final Class<?> type;
+        private final Object value;
+        private final Ast left;
+        private final Ast right;
+
+        private Key(Class<?> type, Object value, Ast left, Ast right) {
+            this.type = type;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key &&
+                    type == ((Key) obj).type &&
+                    Objects.equals(value, ((Key) obj).value) &&
+                    left == ((Key) obj).left &&
+                    right == ((Key) obj).right;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = type.hashCode();
+            hash = 31 * hash + Objects.hashCode(value);
+            hash = 31 * hash + System.identityHashCode(left);
+            hash = 31 * hash + System.identityHashCode(right);
+            return hash;
+        }
+
+    }
+
+}
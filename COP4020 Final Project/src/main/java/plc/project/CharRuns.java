@@ -0,0 +1,71 @@
+package plc.project;
+
+/**
+ * Finds the end of a run of whitespace, identifier characters, digits or
+ * string literal characters for the {@link Lexer}, checking a whole vector of
+ * characters per step with {@code jdk.incubator.vector} (see {@link
+ * VectorCharRuns}).
+ *
+ * Vector scanning is only used when the incubator module is present, which
+ * requires {@code --add-modules jdk.incubator.vector}, and can be turned off
+ * with {@code -Dplc.lexer.vector=false} or {@link #setEnabled(boolean)}. When
+ * it is not in use {@link #scan(char[], int, int, int)} scans nothing, and
+ * the lexer's scalar loops handle the entire run.
+ */
+final class CharRuns {
+
+    static final int WHITESPACE = 0;
+    static final int IDENTIFIER = 1;
+    static final int DIGIT = 2;
+    static final int STRING = 3;
+
+    private static final boolean AVAILABLE = isModulePresent();
+    private static volatile boolean enabled = AVAILABLE && !"false".equals(System.getProperty("plc.lexer.vector"));
+
+    private CharRuns() {}
+
+    /**
+     * Returns true if the vector module is present, regardless of whether
+     * vector scanning is enabled.
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables vector scanning, returning whether it is now in use.
+     * It cannot be enabled if the module is absent.
+     */
+    static boolean setEnabled(boolean enabled) {
+        CharRuns.enabled = enabled && AVAILABLE;
+        return CharRuns.enabled;
+    }
+
+    /**
+     * Returns the index of the first character in [from, to) which is not
+     * part of the run, or an index no greater than {@code to} up to which
+     * every character is part of the run. The characters past the returned
+     * index are left to the caller to check, so a disabled scan returns
+     * {@code from}.
+     */
+    static int scan(char[] chars, int from, int to, int run) {
+        return enabled ? VectorCharRuns.scan(chars, from, to, run) : from;
+    }
+
+    private static boolean isModulePresent() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return false;
+        }
+        try {
+            // loads the vector classes, which fails if they cannot be linked
+            return VectorCharRuns.scan(new char[0], 0, 0, WHITESPACE) == 0;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A 128-bit structural digest of an AST node, see {@link Ast#getDigest()}.
+ * Structurally equal nodes have equal digests, and different nodes have
+ * different digests with overwhelming probability, so a digest can stand in
+ * for a whole subtree as a cache key. Digests only depend on the syntax and
+ * are the same in every run, so they can also key caches kept between runs.
+ *
+ * The digest mixes 64-bit words with the MurmurHash3 x64 128-bit rounds. It
+ * is not cryptographic and must not be relied on for untrusted input.
+ */
+public final class Digest {
+
+    private final long high;
+    private final long low;
+
+    public Digest(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Returns the digest of source text, such as to check whether an AST
+     * saved by {@link AstFormat} was parsed from the same input.
+     */
+    public static Digest of(CharSequence text) {
+        return new Builder(0).add(text.toString()).build();
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Digest &&
+                high == ((Digest) obj).high &&
+                low == ((Digest) obj).low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) low;
+    }
+
+    /**
+     * Returns the digest as 32 hexadecimal digits.
+     */
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * Absorbs the fields and child digests of a node. Each node starts with a
+     * tag for its class, and lists and optional values are prefixed with
+     * their size so that different shapes cannot produce the same words.
+     */
+    static final class Builder {
+
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private long h1;
+        private long h2;
+        private long length = 0;
+
+        Builder(int tag) {
+            h1 = tag;
+            h2 = ~(long) tag;
+        }
+
+        Builder add(long word) {
+            long k1 = Long.rotateLeft(word * C1, 31) * C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            long k2 = Long.rotateLeft(word * C2, 33) * C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+            length++;
+            return this;
+        }
+
+        Builder add(boolean value) {
+            return add(value ? 1 : 0);
+        }
+
+        Builder add(String string) {
+            if (string == null) {
+                return add(-1);
+            }
+            add(string.length());
+            for (int i = 0; i < string.length(); i += 4) {
+                long word = 0;
+                for (int j = i; j < Math.min(i + 4, string.length()); j++) {
+                    word = word << 16 | string.charAt(j);
+                }
+                add(word);
+            }
+            return this;
+        }
+
+        Builder add(Digest digest) {
+            return add(digest.high).add(digest.low);
+        }
+
+        Builder add(Ast ast) {
+            return add(ast.getDigest());
+        }
+
+        Builder add(Optional<? extends Ast> ast) {
+            return ast.isPresent() ? add(true).add(ast.get()) : add(false);
+        }
+
+        Builder addAll(List<? extends Ast> asts) {
+            add(asts.size());
+            for (Ast ast : asts) {
+                add(ast);
+            }
+            return this;
+        }
+
+        Builder addStrings(List<String> strings) {
+            add(strings.size());
+            for (String string : strings) {
+                add(string);
+            }
+            return this;
+        }
+
+        /**
+         * Absorbs the value of a literal along with its type, matching {@link
+         * Object#equals(Object)}. Values of types not produced by the lexer
+         * fall back to their hash code, so their digest is not stable between
+         * runs.
+         */
+        Builder addLiteral(Object literal) {
+            if (literal == null) {
+                return add(0);
+            } else if (literal instanceof Boolean) {
+                return add(1).add((Boolean) literal);
+            } else if (literal instanceof Character) {
+                return add(2).add((Character) literal);
+            } else if (literal instanceof String) {
+                return add(3).add((String) literal);
+            } else if (literal instanceof BigInteger) {
+                return add(4).add(literal.toString());
+            } else if (literal instanceof BigDecimal) {
+                return add(5).add(((BigDecimal) literal).unscaledValue().toString()).add(((BigDecimal) literal).scale());
+            }
+            return add(6).add(literal.getClass().getName()).add(literal.hashCode());
+        }
+
+        Digest build() {
+            long a = h1 ^ length;
+            long b = h2 ^ length;
+            a += b;
+            b += a;
+            a = mix(a);
+            b = mix(b);
+            a += b;
+            b += a;
+            return new Digest(a, b);
+        }
+
+        private static long mix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+    }
+
+}
@@ -0,0 +1,517 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact encoding of an AST built by {@link Parser#parseFlatSource()}.
+ * Rather than an object per node with lists of children, nodes are integer
+ * ids into parallel arrays of kind, first child, next sibling, token index
+ * and a value, which is roughly 22 bytes per node. Names are stored as ids in
+ * the parser's {@link SymbolTable} and literals as indices into a pool of
+ * distinct values, so repeated names and literals are stored once.
+ *
+ * Children are stored in source order. Lists of statements are grouped under
+ * a {@link Kind#BLOCK} node so that optional children can be told apart; the
+ * children of each kind are documented on {@link Kind}. Nodes are added after
+ * their children, so the root is the last node.
+ *
+ * Nodes can be walked directly through the accessors, or dispatched on their
+ * kind to a {@link Visitor} with {@link #accept(int, Visitor)}, which mirrors
+ * {@link Ast.Visitor} over node ids so no {@link Ast} objects are created.
+ * {@link #toAst(int)} converts a subtree for code which needs {@link Ast}
+ * objects, such as an {@link Ast.Visitor}.
+ */
+public final class FlatAst {
+
+    /**
+     * The kind of a node, which corresponds to an {@link Ast} class.
+     */
+    public enum Kind {
+        /** Globals then functions. */
+        SOURCE,
+        /** The name and type, the mutable flag and an optional value. */
+        GLOBAL,
+        /** The name and return type, then parameters and a block. */
+        FUNCTION,
+        /** The name and type of a function parameter. */
+        PARAMETER,
+        /** Statements. */
+        BLOCK,
+        /** An expression. */
+        EXPRESSION,
+        /** The name and optional type, then an optional value. */
+        DECLARATION,
+        /** The receiver and value. */
+        ASSIGNMENT,
+        /** The condition, then block and else block. */
+        IF,
+        /** The condition then cases, the last of which is the default. */
+        SWITCH,
+        /** An optional value then a block. */
+        CASE,
+        /** The condition and block. */
+        WHILE,
+        /** The value. */
+        RETURN,
+        /** The value, in the literal pool. */
+        LITERAL,
+        /** An expression. */
+        GROUP,
+        /** The operator as a {@link Token.Kind}, then the left and right operands. */
+        BINARY,
+        /** The name, then an optional index expression. */
+        ACCESS,
+        /** The name, then arguments. */
+        CALL,
+        /** Elements. */
+        LIST
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final Token.Kind[] OPERATORS = Token.Kind.values();
+
+    private final SymbolTable symbols;
+    private byte[] kinds;
+    private boolean[] mutable;
+    private int[] firsts;
+    private int[] nexts;
+    private int[] lasts; // only used while building
+    private int[] tokens;
+    private int[] values;
+    private int[] types;
+    private int size = 0;
+    private final List<Object> literals = new ArrayList<>();
+    private Map<Object, Integer> pool = new HashMap<>();
+
+    FlatAst(SymbolTable symbols, int capacity) {
+        this.symbols = symbols;
+        capacity = Math.max(capacity, 16);
+        kinds = new byte[capacity];
+        mutable = new boolean[capacity];
+        firsts = new int[capacity];
+        nexts = new int[capacity];
+        lasts = new int[capacity];
+        tokens = new int[capacity];
+        values = new int[capacity];
+        types = new int[capacity];
+    }
+
+    /**
+     * Adds a node with no children, returning its id. The value is a symbol
+     * id, literal pool index or operator depending on the kind.
+     */
+    int add(Kind kind, int token, int value) {
+        if (size == kinds.length) {
+            int capacity = size + (size >> 1);
+            kinds = Arrays.copyOf(kinds, capacity);
+            mutable = Arrays.copyOf(mutable, capacity);
+            firsts = Arrays.copyOf(firsts, capacity);
+            nexts = Arrays.copyOf(nexts, capacity);
+            lasts = Arrays.copyOf(lasts, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+            values = Arrays.copyOf(values, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        firsts[size] = -1;
+        nexts[size] = -1;
+        lasts[size] = -1;
+        tokens[size] = token;
+        values[size] = value;
+        types[size] = -1;
+        return size++;
+    }
+
+    /**
+     * Adds a literal node, storing the value in the pool.
+     */
+    int addLiteral(int token, Object literal) {
+        Integer index = pool.get(literal);
+        if (index == null) {
+            index = literals.size();
+            literals.add(literal);
+            pool.put(literal, index);
+        }
+        return add(Kind.LITERAL, token, index);
+    }
+
+    /**
+     * Appends {@code child} to the children of {@code parent}.
+     */
+    void append(int parent, int child) {
+        if (lasts[parent] < 0) {
+            firsts[parent] = child;
+        }
+        else {
+            nexts[lasts[parent]] = child;
+        }
+        lasts[parent] = child;
+    }
+
+    void setType(int node, int type) {
+        types[node] = type;
+    }
+
+    void setMutable(int node, boolean mutable) {
+        this.mutable[node] = mutable;
+    }
+
+    /**
+     * Releases the space only needed while building, trimming the arrays to
+     * the number of nodes.
+     */
+    void finish() {
+        lasts = null;
+        pool = null;
+        kinds = Arrays.copyOf(kinds, size);
+        mutable = Arrays.copyOf(mutable, size);
+        firsts = Arrays.copyOf(firsts, size);
+        nexts = Arrays.copyOf(nexts, size);
+        tokens = Arrays.copyOf(tokens, size);
+        values = Arrays.copyOf(values, size);
+        types = Arrays.copyOf(types, size);
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the root {@link Kind#SOURCE} node.
+     */
+    public int getRoot() {
+        return size - 1;
+    }
+
+    public Kind getKind(int node) {
+        return KINDS[kinds[checkNode(node)]];
+    }
+
+    /**
+     * Returns the first child of the node, or -1 if it has none.
+     */
+    public int getFirstChild(int node) {
+        return firsts[checkNode(node)];
+    }
+
+    /**
+     * Returns the next child of the node's parent, or -1 if it is the last.
+     */
+    public int getNextSibling(int node) {
+        return nexts[checkNode(node)];
+    }
+
+    /**
+     * Returns the index of the node's first token in the parsed tokens. A
+     * block has the token of the node it belongs to.
+     */
+    public int getTokenIndex(int node) {
+        return tokens[checkNode(node)];
+    }
+
+    /**
+     * Returns the symbol id of the name of a global, function, parameter,
+     * declaration, access or call.
+     */
+    public int getSymbol(int node) {
+        return values[checkNode(node)];
+    }
+
+    public String getName(int node) {
+        return symbols.getName(getSymbol(node));
+    }
+
+    /**
+     * Returns the type name of a global, function, parameter or declaration,
+     * or {@code null} if a function or declaration has none.
+     */
+    public String getTypeName(int node) {
+        return types[checkNode(node)] >= 0 ? symbols.getName(types[node]) : null;
+    }
+
+    public boolean getMutable(int node) {
+        return mutable[checkNode(node)];
+    }
+
+    /**
+     * Returns the value of a literal, as in {@link Ast.Expression.Literal}.
+     */
+    public Object getLiteral(int node) {
+        return literals.get(values[checkNode(node)]);
+    }
+
+    /**
+     * Returns the operator of a binary expression.
+     */
+    public Token.Kind getOperator(int node) {
+        return OPERATORS[values[checkNode(node)]];
+    }
+
+    /**
+     * Returns the number of children of the node.
+     */
+    public int getChildCount(int node) {
+        int count = 0;
+        for (int child = getFirstChild(node); child >= 0; child = nexts[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Calls the method of {@code visitor} for the kind of {@code node} and
+     * returns its result. Blocks and parameters are part of their parent
+     * node, so they are not visited on their own.
+     */
+    public <T> T accept(int node, Visitor<T> visitor) {
+        switch (getKind(node)) {
+            case SOURCE: return visitor.visitSource(node);
+            case GLOBAL: return visitor.visitGlobal(node);
+            case FUNCTION: return visitor.visitFunction(node);
+            case EXPRESSION: return visitor.visitExpression(node);
+            case DECLARATION: return visitor.visitDeclaration(node);
+            case ASSIGNMENT: return visitor.visitAssignment(node);
+            case IF: return visitor.visitIf(node);
+            case SWITCH: return visitor.visitSwitch(node);
+            case CASE: return visitor.visitCase(node);
+            case WHILE: return visitor.visitWhile(node);
+            case RETURN: return visitor.visitReturn(node);
+            case LITERAL: return visitor.visitLiteral(node);
+            case GROUP: return visitor.visitGroup(node);
+            case BINARY: return visitor.visitBinary(node);
+            case ACCESS: return visitor.visitAccess(node);
+            case CALL: return visitor.visitCall(node);
+            case LIST: return visitor.visitList(node);
+            default:
+                throw new IllegalArgumentException("A " + getKind(node) + " node cannot be visited on its own.");
+        }
+    }
+
+    /**
+     * Converts the whole tree to {@link Ast} objects, as {@link
+     * Parser#parseSource()} would have built it.
+     */
+    public Ast.Source toSource() {
+        return (Ast.Source) toAst(getRoot());
+    }
+
+    /**
+     * Converts the subtree at {@code node} to {@link Ast} objects so it can be
+     * visited by an {@link Ast.Visitor}. Blocks and parameters are part of
+     * their parent node, so they cannot be converted on their own. Each
+     * {@link Ast} node takes the id of the node it was converted from.
+     */
+    public Ast toAst(int node) {
+        Ast ast = accept(node, converter);
+        ast.setId(node);
+        return ast;
+    }
+
+    /**
+     * A visitor over the nodes of a {@link FlatAst}, with a method for each
+     * {@link Kind} which is visited on its own, see {@link #accept(int,
+     * Visitor)}. The children of a node are read through the accessors.
+     */
+    public interface Visitor<T> {
+
+        T visitSource(int node);
+
+        T visitGlobal(int node);
+
+        T visitFunction(int node);
+
+        T visitExpression(int node);
+
+        T visitDeclaration(int node);
+
+        T visitAssignment(int node);
+
+        T visitIf(int node);
+
+        T visitSwitch(int node);
+
+        T visitCase(int node);
+
+        T visitWhile(int node);
+
+        T visitReturn(int node);
+
+        T visitLiteral(int node);
+
+        T visitGroup(int node);
+
+        T visitBinary(int node);
+
+        T visitAccess(int node);
+
+        T visitCall(int node);
+
+        T visitList(int node);
+
+    }
+
+    private final Visitor<Ast> converter = new Visitor<>() {
+
+        @Override
+        public Ast visitSource(int node) {
+            List<Ast.Global> globals = new ArrayList<>();
+            List<Ast.Function> functions = new ArrayList<>();
+            for (int child = getFirstChild(node); child >= 0; child = nexts[child]) {
+                if (getKind(child) == Kind.GLOBAL) {
+                    globals.add((Ast.Global) toAst(child));
+                }
+                else {
+                    functions.add((Ast.Function) toAst(child));
+                }
+            }
+            return new Ast.Source(globals, functions);
+        }
+
+        @Override
+        public Ast visitGlobal(int node) {
+            return new Ast.Global(getName(node), getTypeName(node), getMutable(node), optional(getFirstChild(node)));
+        }
+
+        @Override
+        public Ast visitFunction(int node) {
+            List<String> parameters = new ArrayList<>();
+            List<String> parameterTypes = new ArrayList<>();
+            int child = getFirstChild(node);
+            for (; getKind(child) == Kind.PARAMETER; child = nexts[child]) {
+                parameters.add(getName(child));
+                parameterTypes.add(getTypeName(child));
+            }
+            return new Ast.Function(getName(node), parameters, parameterTypes, Optional.ofNullable(getTypeName(node)), statements(child));
+        }
+
+        @Override
+        public Ast visitExpression(int node) {
+            return new Ast.Statement.Expression(expression(getFirstChild(node)));
+        }
+
+        @Override
+        public Ast visitDeclaration(int node) {
+            return new Ast.Statement.Declaration(getName(node), Optional.ofNullable(getTypeName(node)), optional(getFirstChild(node)));
+        }
+
+        @Override
+        public Ast visitAssignment(int node) {
+            int child = getFirstChild(node);
+            return new Ast.Statement.Assignment(expression(child), expression(nexts[child]));
+        }
+
+        @Override
+        public Ast visitIf(int node) {
+            int child = getFirstChild(node);
+            return new Ast.Statement.If(expression(child), statements(nexts[child]), statements(nexts[nexts[child]]));
+        }
+
+        @Override
+        public Ast visitSwitch(int node) {
+            int child = getFirstChild(node);
+            Ast.Expression condition = expression(child);
+            List<Ast.Statement.Case> cases = new ArrayList<>();
+            for (child = nexts[child]; child >= 0; child = nexts[child]) {
+                cases.add((Ast.Statement.Case) toAst(child));
+            }
+            return new Ast.Statement.Switch(condition, cases);
+        }
+
+        @Override
+        public Ast visitCase(int node) {
+            int child = getFirstChild(node);
+            if (getKind(child) == Kind.BLOCK) {
+                return new Ast.Statement.Case(Optional.empty(), statements(child));
+            }
+            return new Ast.Statement.Case(Optional.of(expression(child)), statements(nexts[child]));
+        }
+
+        @Override
+        public Ast visitWhile(int node) {
+            int child = getFirstChild(node);
+            return new Ast.Statement.While(expression(child), statements(nexts[child]));
+        }
+
+        @Override
+        public Ast visitReturn(int node) {
+            return new Ast.Statement.Return(expression(getFirstChild(node)));
+        }
+
+        @Override
+        public Ast visitLiteral(int node) {
+            return new Ast.Expression.Literal(getLiteral(node));
+        }
+
+        @Override
+        public Ast visitGroup(int node) {
+            return new Ast.Expression.Group(expression(getFirstChild(node)));
+        }
+
+        @Override
+        public Ast visitBinary(int node) {
+            int child = getFirstChild(node);
+            return new Ast.Expression.Binary(getOperator(node).getLiteral(), expression(child), expression(nexts[child]));
+        }
+
+        @Override
+        public Ast visitAccess(int node) {
+            return new Ast.Expression.Access(optional(getFirstChild(node)), getName(node));
+        }
+
+        @Override
+        public Ast visitCall(int node) {
+            return new Ast.Expression.Function(getName(node), expressions(getFirstChild(node)));
+        }
+
+        @Override
+        public Ast visitList(int node) {
+            return new Ast.Expression.PlcList(expressions(getFirstChild(node)));
+        }
+
+    };
+    private Ast.Expression expression(int node) {
+        return (Ast.Expression) toAst(node);
+    }
+
+    private Optional<Ast.Expression> optional(int node) {
+        return node >= 0 ? Optional.of(expression(node)) : Optional.empty();
+    }
+
+    private List<Ast.Expression> expressions(int first) {
+        List<Ast.Expression> expressions = new ArrayList<>();
+        for (int child = first; child >= 0; child = nexts[child]) {
+            expressions.add(expression(child));
+        }
+        return expressions;
+    }
+
+    private List<Ast.Statement> statements(int block) {
+        List<Ast.Statement> statements = new ArrayList<>();
+        for (int child = getFirstChild(block); child >= 0; child = nexts[child]) {
+            statements.add((Ast.Statement) toAst(child));
+        }
+        return statements;
+    }
+
+    private int checkNode(int node) {
+        if (node < 0 || node >= size) {
+            throw new IndexOutOfBoundsException("Node " + node + " out of bounds for length " + size);
+        }
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        return "FlatAst{size=" + size + ", literals=" + literals.size() + '}';
+    }
+
+}
@@ -6,10 +6,24 @@ import java.util.List;
 public final class Generator implements Ast.Visitor<Void> {
 
     private final PrintWriter writer;
+    private final Analysis analysis;
     private int indent = 0;
 
+    /**
+     * Creates a generator for an AST analyzed in place, see {@link
+     * Analysis#inPlace()}.
+     */
     public Generator(PrintWriter writer) {
+        this(writer, Analysis.inPlace());
+    }
+
+    /**
+     * Creates a generator which reads types, variables and functions from
+     * the analysis of the AST.
+     */
+    public Generator(PrintWriter writer, Analysis analysis) {
         this.writer = writer;
+        this.analysis = analysis;
     }
 
     private void print(Object... objects) {
@@ -86,7 +100,7 @@ public final class Generator implements Ast.Visitor<Void> {
         if (!ast.getMutable())
             print("final ");
 
-        print(ast.getVariable().getType().getJvmName());
+        print(analysis.getVariable(ast).getType().getJvmName());
         if (ast.getValue().isPresent())
             if (ast.getValue().get() instanceof Ast.Expression.PlcList)
                 print("[]");
@@ -104,12 +118,12 @@ public final class Generator implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Function ast) {
 
-        print(ast.getFunction().getReturnType().getJvmName() + " " + ast.getName() + "(");
+        print(analysis.getFunction(ast).getReturnType().getJvmName() + " " + ast.getName() + "(");
 
         if (!ast.getParameters().isEmpty())
         {
             List<String> parameters = ast.getParameters();
-            List<Environment.Type> types = ast.getFunction().getParameterTypes();
+            List<Environment.Type> types = analysis.getFunction(ast).getParameterTypes();
 
             print(types.get(0).getJvmName() + " " + parameters.get(0));
 
@@ -148,7 +162,7 @@ public final class Generator implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Statement.Declaration ast) {
 
-        print(ast.getVariable().getType().getJvmName(), " ", ast.getName());
+        print(analysis.getVariable(ast).getType().getJvmName(), " ", ast.getName());
 
         if (ast.getValue().isPresent())
             print(" = ", ast.getValue().get());
@@ -295,7 +309,7 @@ public final class Generator implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Expression.Literal ast) {
 
-        if (ast.getLiteral().equals(Environment.NIL) || ast.getType().equals(Environment.Type.NIL))
+        if (ast.getLiteral().equals(Environment.NIL) || analysis.getType(ast).equals(Environment.Type.NIL))
             print("Void");
         else if (ast.getLiteral() instanceof String)
             print("\"" + ast.getLiteral() + "\"");
@@ -329,7 +343,7 @@ public final class Generator implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Expression.Access ast) {
 
-        print(ast.getVariable().getJvmName());
+        print(analysis.getVariable(ast).getJvmName());
         if (ast.getOffset().isPresent())
             print("[", ast.getOffset().get(), "]");
 
@@ -339,7 +353,7 @@ public final class Generator implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Expression.Function ast) {
 
-        print(ast.getFunction().getJvmName() + "(");
+        print(analysis.getFunction(ast).getJvmName() + "(");
         if (!ast.getArguments().isEmpty())
         {
             print(ast.getArguments().get(0));
@@ -0,0 +1,235 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a source, its tokens and its AST up to date as the source is edited,
+ * such as by a watch-mode build. An edit is relexed with {@link
+ * Lexer#relex(String, List, TextEdit, SymbolTable)} and only the top-level
+ * globals and functions whose tokens changed are reparsed. The others are
+ * reused as the same {@link Ast.Global} and {@link Ast.Function} objects, so
+ * later passes can compare declarations by identity to skip unchanged ones.
+ *
+ * Parsing a declaration only depends on its own tokens, since the parser
+ * looks one token ahead and each declaration ends with a {@code ;} or
+ * {@code END}. A declaration is therefore reused if its tokens are within the
+ * unchanged prefix or suffix of the token list. Reparsing starts at the first
+ * declaration which is not and continues until it reaches the start of a
+ * reusable declaration in the suffix, so the cost depends on the size of the
+ * edited declarations rather than the program.
+ */
+public final class IncrementalParser {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private String input;
+    private List<Token> tokens;
+    private Ast.Source source = null;
+    private final List<Ast> declarations = new ArrayList<>();
+    private final List<Integer> starts = new ArrayList<>(); // token index of each declaration
+    private final List<Integer> ends = new ArrayList<>();
+    private int nodes = 0; // node ids assigned, see Parser#getNodeCount()
+
+    /**
+     * Lexes and parses the input.
+     */
+    public IncrementalParser(String input) {
+        this.input = input;
+        this.tokens = new Lexer(input, symbols).lex();
+        parse();
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Returns the AST of the current input, reparsing it entirely if the
+     * last edit failed to parse.
+     */
+    public Ast.Source getSource() {
+        if (source == null) {
+            parse();
+        }
+        return source;
+    }
+
+    /**
+     * Applies an edit to the input and returns the updated AST. If the edited
+     * input cannot be lexed the edit is not applied. If it cannot be parsed
+     * the edit is applied and the {@link ParseException} is thrown, and the
+     * next edit parses the input in full.
+     */
+    public Ast.Source edit(TextEdit edit) {
+        List<Token> previous = tokens;
+        String edited = edit.apply(input);
+        tokens = Lexer.relex(edited, previous, edit, symbols);
+        input = edited;
+        if (source == null) {
+            return getSource();
+        }
+
+        // tokens entirely before or after the edit which lexed the same
+        int prefix = 0;
+        while (prefix < previous.size() && prefix < tokens.size() && end(previous.get(prefix)) <= edit.getOffset()
+                && same(previous.get(prefix), tokens.get(prefix), 0)) {
+            prefix++;
+        }
+        int suffix = 0;
+        int limit = Math.min(previous.size(), tokens.size()) - prefix;
+        while (suffix < limit && previous.get(previous.size() - 1 - suffix).getIndex() >= edit.getOffset() + edit.getRemoved()
+                && same(previous.get(previous.size() - 1 - suffix), tokens.get(tokens.size() - 1 - suffix), edit.getDelta())) {
+            suffix++;
+        }
+
+        int first = 0;
+        while (first < declarations.size() && ends.get(first) <= prefix) {
+            first++;
+        }
+        int shift = tokens.size() - previous.size();
+        int reused = first;
+        while (reused < declarations.size() && starts.get(reused) < previous.size() - suffix) {
+            reused++;
+        }
+
+        List<Ast> suffixDeclarations = new ArrayList<>(declarations.subList(reused, declarations.size()));
+        List<Integer> suffixStarts = new ArrayList<>();
+        List<Integer> suffixEnds = new ArrayList<>();
+        for (int i = reused; i < declarations.size(); i++) {
+            suffixStarts.add(starts.get(i) + shift);
+            suffixEnds.add(ends.get(i) + shift);
+        }
+        int start = first < declarations.size() ? starts.get(first) : first > 0 ? ends.get(first - 1) : 0;
+        truncate(first);
+
+        source = null;
+        Parser parser = new Parser(tokens, symbols);
+        parser.setNodeCount(nodes);
+        try {
+            int index = start;
+            int next = 0;
+            while (index < tokens.size()) {
+                while (next < suffixStarts.size() && suffixStarts.get(next) < index) {
+                    next++;
+                }
+                if (next < suffixStarts.size() && suffixStarts.get(next) == index && (suffixDeclarations.get(next) instanceof Ast.Function || !hasFunctions())) {
+                    add(suffixDeclarations.get(next), index, suffixEnds.get(next));
+                    index = suffixEnds.get(next);
+                }
+                else {
+                    index = parseDeclaration(parser, index);
+                }
+            }
+        } finally {
+            nodes = parser.getNodeCount();
+        }
+        source = build();
+        return source;
+    }
+
+    /**
+     * Parses every declaration, numbering nodes from 0 again.
+     */
+    private void parse() {
+        source = null;
+        truncate(0);
+        Parser parser = new Parser(tokens, symbols);
+        try {
+            for (int index = 0; index < tokens.size(); ) {
+                index = parseDeclaration(parser, index);
+            }
+        } finally {
+            nodes = parser.getNodeCount();
+        }
+        source = build();
+    }
+
+    /**
+     * Parses the declaration at {@code index} as {@link
+     * Parser#parseSource()} would, returning the index after it.
+     */
+    private int parseDeclaration(Parser parser, int index) {
+        parser.setIndex(index);
+        Token.Kind kind = tokens.get(index).getKind();
+        Ast declaration;
+        if (!hasFunctions() && (kind == Token.Kind.LIST || kind == Token.Kind.VAR || kind == Token.Kind.VAL)) {
+            declaration = parser.parseGlobal();
+        }
+        else if (kind == Token.Kind.FUN) {
+            declaration = parser.parseFunction();
+        }
+        else {
+            throw new ParseException("Exception in SOURCE, expected FUN at index " + tokens.get(index).getIndex(), tokens.get(index).getIndex());
+        }
+        add(declaration, index, parser.getIndex());
+        return parser.getIndex();
+    }
+
+    private void add(Ast declaration, int start, int end) {
+        declarations.add(declaration);
+        starts.add(start);
+        ends.add(end);
+    }
+
+    /**
+     * Removes the declarations after the first {@code size}.
+     */
+    private void truncate(int size) {
+        declarations.subList(size, declarations.size()).clear();
+        starts.subList(size, starts.size()).clear();
+        ends.subList(size, ends.size()).clear();
+    }
+
+    private boolean hasFunctions() {
+        return !declarations.isEmpty() && declarations.get(declarations.size() - 1) instanceof Ast.Function;
+    }
+
+    /**
+     * Returns the number of node ids assigned. Reused declarations keep their
+     * ids and reparsed ones are given new ids, so ids stay unique within the
+     * source but the gaps left by replaced declarations are not reused until
+     * the input is parsed in full.
+     */
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    private Ast.Source build() {
+        List<Ast.Global> globals = new ArrayList<>();
+        List<Ast.Function> functions = new ArrayList<>();
+        for (Ast declaration : declarations) {
+            if (declaration instanceof Ast.Global) {
+                globals.add((Ast.Global) declaration);
+            }
+            else {
+                functions.add((Ast.Function) declaration);
+            }
+        }
+        Ast.Source source = new Ast.Source(globals, functions);
+        source.setId(nodes++);
+        return source;
+    }
+
+    private static int end(Token token) {
+        return token.getIndex() + token.getLiteral().length();
+    }
+
+    /**
+     * Returns true if the tokens are the same once the first is moved by
+     * {@code delta}.
+     */
+    private static boolean same(Token previous, Token token, int delta) {
+        return previous == token || previous.getType() == token.getType()
+                && previous.getIndex() + delta == token.getIndex()
+                && previous.getLiteral().equals(token.getLiteral());
+    }
+
+}
@@ -12,6 +12,7 @@ import java.util.stream.Collectors;
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
+    private final NodeSymbols symbols = new NodeSymbols();
 
     public Interpreter(Scope parent) {
         scope = new Scope(parent);
@@ -45,9 +46,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Global ast) {
 
         if (ast.getValue().isPresent())
-            scope.defineVariable(ast.getName(), ast.getMutable(), visit(ast.getValue().get()));
+            scope.defineVariable(symbols.get(ast, scope.getSymbols()), ast.getMutable(), visit(ast.getValue().get()));
         else
-            scope.defineVariable(ast.getName(), ast.getMutable(), Environment.NIL);
+            scope.defineVariable(symbols.get(ast, scope.getSymbols()), ast.getMutable(), Environment.NIL);
 
         return Environment.NIL;
     }
@@ -59,15 +60,15 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         try
         {
             int arity = ast.getParameters().size();
-            scope.defineFunction(ast.getName(), arity, args ->
+            scope.defineFunction(symbols.get(ast, scope.getSymbols()), arity, args ->
             {
                 scope = childScope;
                 try
                 {
                     for (int i = 0; i < arity; i++)
                     {
-                        String curName = ast.getParameters().get(i);
-                        scope.defineVariable(curName, true, args.get(i));
+                        int curSymbol = symbols.getParameter(ast, i, scope.getSymbols());
+                        scope.defineVariable(curSymbol, true, args.get(i));
                     }
 
                     ast.getStatements().forEach(this::visit);
@@ -102,9 +103,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         Optional<Ast.Expression> optional = ast.getValue();
 
         if (optional.isPresent())
-            scope.defineVariable(ast.getName(), true, visit(optional.get()));
+            scope.defineVariable(symbols.get(ast, scope.getSymbols()), true, visit(optional.get()));
         else
-            scope.defineVariable(ast.getName(), true, Environment.NIL);
+            scope.defineVariable(symbols.get(ast, scope.getSymbols()), true, Environment.NIL);
 
         return Environment.NIL;
     }
@@ -118,7 +119,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
         visit(receiver);
 
-        if (!(scope.lookupVariable(receiver.getName()).getMutable()))
+        if (!(scope.lookupVariable(symbols.get(receiver, scope.getSymbols())).getMutable()))
             throw new RuntimeException("Exception in visit(Ast.Statement.Assignment): Cannot assign to an immutable variable");
 
         Environment.PlcObject value = visit(ast.getValue());
@@ -126,11 +127,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         if (receiver.getOffset().isPresent())
         {
             int offset = requireType(BigInteger.class, visit(receiver.getOffset().get())).intValue();
-            ((List<Object>) scope.lookupVariable(receiver.getName()).getValue().getValue()).set(offset, visit(ast.getValue()).getValue());
+            ((List<Object>) scope.lookupVariable(symbols.get(receiver, scope.getSymbols())).getValue().getValue()).set(offset, visit(ast.getValue()).getValue());
         }
         else
         {
-            scope.lookupVariable(receiver.getName()).setValue(value);
+            scope.lookupVariable(symbols.get(receiver, scope.getSymbols())).setValue(value);
         }
 
         return Environment.NIL;
@@ -408,7 +409,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         if (offset.isPresent())
         {
             BigInteger offsetVal = requireType(BigInteger.class, visit(offset.get()));
-            List<Ast.Expression> list = ((List<Ast.Expression>) scope.lookupVariable(ast.getName()).getValue().getValue());
+            List<Ast.Expression> list = ((List<Ast.Expression>) scope.lookupVariable(symbols.get(ast, scope.getSymbols())).getValue().getValue());
 
             if ((offsetVal.intValue() < 0) || (offsetVal.intValue() >= list.size()))
                 throw new RuntimeException("Exception in Access, index out of bounds");
@@ -417,7 +418,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         }
         else
         {
-            return scope.lookupVariable(ast.getName()).getValue();
+            return scope.lookupVariable(symbols.get(ast, scope.getSymbols())).getValue();
         }
     }
 
@@ -428,7 +429,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         for (Ast.Expression expr : ast.getArguments())
             args.add(visit(expr));
 
-        return scope.lookupFunction(ast.getName(), ast.getArguments().size()).invoke(args);
+        return scope.lookupFunction(symbols.get(ast, scope.getSymbols()), ast.getArguments().size()).invoke(args);
     }
 
     @Override
@@ -1,7 +1,21 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * The lexer works through three main functions:
@@ -14,13 +28,140 @@ import java.util.ArrayList;
  * should throw a {@link ParseException} with an index at the character which is
  * invalid.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are * helpers you need to use, they will make the implementation a lot easier. */
+ * Characters are classified through the precomputed {@link #CLASSES} table
+ * rather than by matching regexes, and {@link #lexToken()} dispatches on the
+ * {@link #START} state of the first character. Each lex method is then a small
+ * state machine over those classes, so no objects are allocated until a token
+ * is emitted. The regex based {@link #peek(String...)} and {@link
+ * #match(String...)} helpers are still available for callers that want them.
+ *
+ * Identifiers are interned into a {@link SymbolTable} as they are emitted, so
+ * repeated names share one string and carry an integer id.
+ *
+ * Runs of whitespace, identifier characters, digits and string characters
+ * longer than {@link #SCALAR_RUN} are handed to {@link
+ * CharStream#advanceRun(int)}, which streams over in-memory input may
+ * implement with the vector scanning of {@link CharRuns}.
+ */
 public final class Lexer {
 
+    private static final int WHITESPACE = 1;
+    private static final int IDENTIFIER_START = 2;
+    private static final int IDENTIFIER_PART = 4;
+    private static final int DIGIT = 8;
+    private static final int NONZERO_DIGIT = 16;
+    private static final int ESCAPE = 32;
+    private static final int LITERAL_BREAK = 64;
+
+    private static final byte START_OPERATOR = 0;
+    private static final byte START_IDENTIFIER = 1;
+    private static final byte START_NUMBER = 2;
+    private static final byte START_MINUS = 3;
+    private static final byte START_CHARACTER = 4;
+    private static final byte START_STRING = 5;
+
+    /**
+     * Character class bit flags for each ASCII character. Anything outside of
+     * ASCII has no class, which matches the ASCII-only regexes of the grammar.
+     */
+    private static final byte[] CLASSES = new byte[128];
+
+    /**
+     * The state {@link #lexToken()} starts in for each ASCII character.
+     */
+    private static final byte[] START = new byte[128];
+
+    /**
+     * The number of characters of a run checked one at a time before the rest
+     * is scanned in bulk. Most runs are shorter than this, and scanning them
+     * in bulk would cost more than it saves.
+     */
+    private static final int SCALAR_RUN = 16;
+
+    static {
+        for (char c : " \b\n\r\t".toCharArray())
+            CLASSES[c] |= WHITESPACE;
+        for (char c = 'A'; c <= 'Z'; c++)
+            CLASSES[c] |= IDENTIFIER_START | IDENTIFIER_PART;
+        for (char c = 'a'; c <= 'z'; c++)
+            CLASSES[c] |= IDENTIFIER_START | IDENTIFIER_PART;
+        CLASSES['@'] |= IDENTIFIER_START;
+        for (char c = '0'; c <= '9'; c++)
+            CLASSES[c] |= IDENTIFIER_PART | DIGIT | (c == '0' ? 0 : NONZERO_DIGIT);
+        CLASSES['_'] |= IDENTIFIER_PART;
+        CLASSES['-'] |= IDENTIFIER_PART;
+        for (char c : "bnrt'\"\\".toCharArray())
+            CLASSES[c] |= ESCAPE;
+        for (char c : "\n\r\\".toCharArray())
+            CLASSES[c] |= LITERAL_BREAK;
+
+        for (char c = 0; c < 128; c++) {
+            if ((CLASSES[c] & IDENTIFIER_START) != 0)
+                START[c] = START_IDENTIFIER;
+            else if ((CLASSES[c] & DIGIT) != 0)
+                START[c] = START_NUMBER;
+        }
+        START['-'] = START_MINUS;
+        START['\''] = START_CHARACTER;
+        START['"'] = START_STRING;
+    }
+
     private final CharStream chars;
+    private final SymbolTable symbols;
 
     public Lexer(String input) {
-        chars = new CharStream(input);
+        this(new StringCharStream(input));
+    }
+
+    /**
+     * Creates a lexer which interns identifiers into the given table, which
+     * may be shared with other lexers of the same compilation.
+     */
+    public Lexer(String input, SymbolTable symbols) {
+        this(new StringCharStream(input), symbols);
+    }
+
+    /**
+     * Creates a lexer which reads the input through a fixed size buffer, so
+     * the input never has to be held in memory as a whole. Combined with
+     * {@link Parser#Parser(Lexer)}, memory use is independent of input size.
+     * The reader is not closed by the lexer.
+     */
+    public Lexer(Reader input) {
+        this(new ReaderCharStream(input, ReaderCharStream.DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Creates a lexer which decodes the channel with the given charset as in
+     * {@link #Lexer(Reader)}.
+     */
+    public Lexer(ReadableByteChannel input, Charset charset) {
+        this(Channels.newReader(input, charset.newDecoder(), -1));
+    }
+
+    /**
+     * Creates a lexer over a memory-mapped UTF-8 file, see {@link
+     * MappedCharStream}.
+     */
+    public Lexer(Path path) throws IOException {
+        this(MappedCharStream.map(path));
+    }
+
+    public Lexer(CharStream chars) {
+        this(chars, new SymbolTable());
+    }
+
+    public Lexer(CharStream chars, SymbolTable symbols) {
+        this.chars = chars;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Returns the table identifiers are interned into, which gives the
+     * meaning of {@link Token#getSymbol()} for the tokens of this lexer.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
     }
 
     /**
@@ -30,23 +171,284 @@ public final class Lexer {
     public List<Token> lex() {
         List<Token> result = new ArrayList<>();
 
-        int i = 0;
-        while (i < chars.input.length()) {
-            if (peek("[^ \b\n\r\t]")) {
-                Token curToken = lexToken();
-                result.add(curToken);
-                i = curToken.getIndex() + curToken.getLiteral().length();
+        while (skipWhitespace())
+            result.add(emit(scanToken()));
+
+        return result;
+    }
+
+    /**
+     * Updates the tokens of a previous lex after the source has been edited,
+     * returning the same tokens as lexing {@code input}, the source after the
+     * edit, from scratch.
+     *
+     * Lexing restarts after the last token which could not have been affected
+     * by the edit. A token starting at {@code s} and ending at {@code e} reads
+     * no further than {@code max(s + 4, e + 2)}: the lookahead for {@code
+     * -0.5} and the {@code .} and digit after an integer. Relexing stops at the
+     * first new token after the edit which starts where a previous token
+     * starts (once shifted), since the rest of the input is unchanged and the
+     * lexer has no state between tokens. The remaining tokens are reused with
+     * their indices shifted, so the amount of input relexed depends on the
+     * edit rather than the size of the source.
+     *
+     * Relexed identifiers are interned into a new table, so symbol ids are
+     * only consistent with the previous tokens when the table which lexed
+     * them is passed to {@link #relex(String, List, TextEdit, SymbolTable)}.
+     */
+    public static List<Token> relex(String input, List<Token> tokens, TextEdit edit) {
+        return relex(input, tokens, edit, new SymbolTable());
+    }
+
+    /**
+     * Relexes as in {@link #relex(String, List, TextEdit)}, interning
+     * identifiers into the table which lexed the previous tokens.
+     */
+    public static List<Token> relex(String input, List<Token> tokens, TextEdit edit, SymbolTable symbols) {
+        int offset = edit.getOffset();
+        int delta = edit.getDelta();
+
+        // binary search for the first token whose lookahead reaches the edit
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Token token = tokens.get(middle);
+            int end = token.getIndex() + token.getLiteral().length();
+            if (Math.max(token.getIndex() + 4, end + 2) <= offset)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        int first = low;
+        int start = 0;
+        if (first > 0) {
+            Token previous = tokens.get(first - 1);
+            start = previous.getIndex() + previous.getLiteral().length();
+        }
+
+        List<Token> result = new ArrayList<>(tokens.size() + Math.max(delta, 0));
+        result.addAll(tokens.subList(0, first));
+
+        Lexer lexer = new Lexer(new StringCharStream(input, start, input.length()), symbols);
+        int editEnd = offset + edit.getInserted().length();
+        int previousEditEnd = offset + edit.getRemoved();
+        int next = first;
+        Token token;
+        while ((token = lexer.lexNext()) != null) {
+            if (token.getIndex() >= editEnd) {
+                while (next < tokens.size() && (tokens.get(next).getIndex() < previousEditEnd
+                        || tokens.get(next).getIndex() + delta < token.getIndex())) {
+                    next++;
+                }
+                if (next < tokens.size() && tokens.get(next).getIndex() + delta == token.getIndex()) {
+                    for (Token remaining : tokens.subList(next, tokens.size())) {
+                        result.add(delta == 0 ? remaining : new Token(remaining.getType(), remaining.getLiteral(), remaining.getIndex() + delta, remaining.getKind(), remaining.getSymbol()));
+                    }
+                    return result;
+                }
             }
-            else {
-                match("[ \b\n\r\t]");
-                chars.skip();
-                i++;
+            result.add(token);
+        }
+        return result;
+    }
+
+    /**
+     * Lexes the input in parallel on the common pool, see {@link
+     * #lexParallel(String, ForkJoinPool, int)}.
+     */
+    public static List<Token> lexParallel(String input) {
+        return lexParallel(input, ForkJoinPool.commonPool(), 1 << 16);
+    }
+
+    /**
+     * Lexes the input in chunks of roughly {@code chunkSize} characters on
+     * the given pool, producing the same tokens as {@link #lex()}.
+     *
+     * Chunks end just after a newline. Character and string literals cannot
+     * contain a raw newline, so a newline is never inside a token, and every
+     * lex method stops looking ahead at the first character which does not
+     * match, which would be the newline. Each chunk is therefore lexed exactly
+     * as it would be sequentially. Chunks are lexed with absolute indices, and
+     * if any of them fail the exception of the earliest one is thrown, which
+     * is the first error in the input.
+     */
+    public static List<Token> lexParallel(String input, ForkJoinPool pool, int chunkSize) {
+        return lexParallel(input, pool, chunkSize, new SymbolTable());
+    }
+
+    /**
+     * Lexes in parallel as in {@link #lexParallel(String, ForkJoinPool, int)},
+     * interning identifiers into the given table.
+     *
+     * Each chunk interns into a table of its own so that chunks never contend
+     * on a lock. Once every chunk is lexed, the names of each chunk's table
+     * are interned into the given table in input order, which assigns the
+     * same ids as lexing sequentially, and the identifiers of each chunk are
+     * then remapped to those ids in parallel.
+     */
+    public static List<Token> lexParallel(String input, ForkJoinPool pool, int chunkSize, SymbolTable symbols) {
+        List<ChunkTask> tasks = new ArrayList<>();
+        int start = 0;
+        while (start < input.length()) {
+            int end = input.indexOf('\n', Math.min(start + Math.max(chunkSize, 1), input.length()) - 1);
+            end = end < 0 ? input.length() : end + 1;
+            tasks.add(new ChunkTask(input, start, end));
+            start = end;
+        }
+
+        if (tasks.size() <= 1)
+            return new Lexer(input, symbols).lex();
+
+        tasks.forEach(pool::execute);
+        List<List<Token>> chunks = new ArrayList<>(tasks.size());
+        int size = 0;
+        try {
+            for (ChunkTask task : tasks) {
+                List<Token> chunk = task.join();
+                chunks.add(chunk);
+                size += chunk.size();
             }
+        } catch (RuntimeException e) {
+            tasks.forEach(task -> task.cancel(false));
+            throw e;
         }
 
+        List<RemapTask> remaps = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            SymbolTable local = tasks.get(i).symbols;
+            int[] ids = new int[local.size()];
+            for (int id = 0; id < ids.length; id++) {
+                ids[id] = symbols.intern(local.getName(id));
+            }
+            remaps.add(new RemapTask(chunks.get(i), symbols, ids));
+        }
+        remaps.forEach(pool::execute);
+        remaps.forEach(RemapTask::join);
+
+        List<Token> result = new ArrayList<>(size);
+        chunks.forEach(result::addAll);
         return result;
     }
 
+    /**
+     * Lexes the range [start, end) of the input for {@link
+     * #lexParallel(String, ForkJoinPool, int, SymbolTable)}, interning
+     * identifiers into a table of its own.
+     */
+    private static final class ChunkTask extends RecursiveTask<List<Token>> {
+
+        private final String input;
+        private final int start;
+        private final int end;
+        private final SymbolTable symbols = new SymbolTable();
+
+        private ChunkTask(String input, int start, int end) {
+            this.input = input;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<Token> compute() {
+            return new Lexer(new StringCharStream(input, start, end), symbols).lex();
+        }
+
+    }
+
+    /**
+     * Replaces the identifiers of a chunk, which were interned into the
+     * chunk's own table, with tokens carrying the ids of the shared table.
+     */
+    private static final class RemapTask extends RecursiveAction {
+
+        private final List<Token> tokens;
+        private final SymbolTable symbols;
+        private final int[] ids;
+
+        private RemapTask(List<Token> tokens, SymbolTable symbols, int[] ids) {
+            this.tokens = tokens;
+            this.symbols = symbols;
+            this.ids = ids;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (token.getSymbol() >= 0) {
+                    int id = ids[token.getSymbol()];
+                    tokens.set(i, new Token(token.getType(), symbols.getName(id), token.getIndex(), token.getKind(), id));
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but records the
+     * tokens in a {@link TokenBuffer} instead of creating a {@link Token} and
+     * literal string for each one. If the stream does not hold its input in
+     * memory, the buffer keeps a copy of the text of each token instead.
+     */
+    public TokenBuffer lexBuffer() {
+        CharSequence input = chars.getInput();
+        TokenBuffer result = input != null
+                ? new TokenBuffer(input, Math.max(16, input.length() / 4), symbols)
+                : new TokenBuffer(1024, symbols);
+
+        while (skipWhitespace())
+            chars.emit(scanToken(), result);
+
+        return result;
+    }
+
+    /**
+     * Lexes the next token after any whitespace, or returns {@code null} once
+     * the input is exhausted. This allows a consumer such as {@link
+     * Parser#Parser(Lexer)} to pull tokens on demand rather than lexing the
+     * entire input up front.
+     */
+    public Token lexNext() {
+        return skipWhitespace() ? emit(scanToken()) : null;
+    }
+
+    /**
+     * Emits the current token, interning it if it is an identifier.
+     */
+    private Token emit(Token.Type type) {
+        return chars.emit(type, symbols);
+    }
+
+    /**
+     * Skips whitespace, returning true if there is another token to lex.
+     */
+    private boolean skipWhitespace() {
+        int scanned = 0;
+        while (chars.has(0) && is(chars.get(0), WHITESPACE)) {
+            chars.advance();
+            if (++scanned % SCALAR_RUN == 0)
+                chars.advanceRun(CharRuns.WHITESPACE);
+            chars.skip();
+        }
+        return chars.has(0);
+    }
+
+    /**
+     * Advances over a run of characters with any of the classes in the mask,
+     * handing runs longer than {@link #SCALAR_RUN} to {@link
+     * CharStream#advanceRun(int)}. The scalar loop still decides where the run
+     * ends, so the bulk scan only has to skip characters it is sure of.
+     */
+    private void advanceRun(int mask, int run) {
+        int scanned = 0;
+        while (peekClass(0, mask)) {
+            chars.advance();
+            if (++scanned % SCALAR_RUN == 0)
+                chars.advanceRun(run);
+        }
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -56,134 +458,195 @@ public final class Lexer {
      * by {@link #lex()}
      */
     public Token lexToken() {
-        if (peek("@|[A-Za-z]"))
-            return lexIdentifier();
-        else if (peek("[0-9]") || peek("-", "[1-9]") || peek("-", "0", "\\.", "[0-9]"))
-            return lexNumber();
-        else if (peek("'"))
-            return lexCharacter();
-        else if (peek("\""))
-            return lexString();
-        else
-            return lexOperator();
+        return emit(scanToken());
     }
 
     public Token lexIdentifier() {
-        match("@|[A-Za-z]");
+        return emit(scanIdentifier());
+    }
 
-        while (peek("[A-Za-z0-9_-]"))
-            match("[A-Za-z0-9_-]");
+    public Token lexNumber() {
+        return emit(scanNumber());
+    }
 
-        return chars.emit(Token.Type.IDENTIFIER);
+    public Token lexCharacter() {
+        return emit(scanCharacter());
     }
 
-    public Token lexNumber() {
-        if (peek("-"))
-            match("-");
+    public Token lexString() {
+        return emit(scanString());
+    }
+
+    public Token lexOperator() {
+        return emit(scanOperator());
+    }
 
-        if (peek("[0-9]")) {
-            if (peek("0", "\\.", "[0-9]") ) {
-                match("[0]");
-                match("\\.");
+    /**
+     * Advances over the next token without emitting it, returning its type.
+     * The lex methods below each wrap one of these scan methods.
+     */
+    private Token.Type scanToken() {
+        if (!chars.has(0))
+            return scanOperator();
 
-                if (peek("[0-9]")) {
-                    while (peek("[0-9]"))
-                        match("[0-9]");
-                }
+        char c = chars.get(0);
+        switch (c < 128 ? START[c] : START_OPERATOR) {
+            case START_IDENTIFIER:
+                return scanIdentifier();
+            case START_NUMBER:
+                return scanNumber();
+            case START_MINUS:
+                // a number is either -[1-9] or -0.[0-9], anything else is an operator
+                if (peekClass(1, NONZERO_DIGIT) || (peekChar(1, '0') && peekChar(2, '.') && peekClass(3, DIGIT)))
+                    return scanNumber();
+                return scanOperator();
+            case START_CHARACTER:
+                return scanCharacter();
+            case START_STRING:
+                return scanString();
+            default:
+                return scanOperator();
+        }
+    }
 
-                return chars.emit(Token.Type.DECIMAL);
+    private Token.Type scanIdentifier() {
+        if (peekClass(0, IDENTIFIER_START))
+            chars.advance();
 
-            }
-            else if (peek("0")) {
-                match("[0]");
-                return chars.emit(Token.Type.INTEGER);
+        advanceRun(IDENTIFIER_PART, CharRuns.IDENTIFIER);
+
+        return Token.Type.IDENTIFIER;
+    }
+
+    private Token.Type scanNumber() {
+        matchChar('-');
+
+        if (peekClass(0, DIGIT)) {
+            if (peekChar(0, '0')) {
+                if (peekChar(1, '.') && peekClass(2, DIGIT)) {
+                    chars.advance();
+                    chars.advance();
+
+                    advanceRun(DIGIT, CharRuns.DIGIT);
+
+                    return Token.Type.DECIMAL;
+                }
+
+                chars.advance();
+                return Token.Type.INTEGER;
             }
 
-            while (peek("[0-9]"))
-                match("[0-9]");
+            advanceRun(DIGIT, CharRuns.DIGIT);
 
-            if (peek("\\.", "[0-9]")) {
-                match("\\.");
+            if (peekChar(0, '.') && peekClass(1, DIGIT)) {
+                chars.advance();
 
-                while (peek("[0-9]"))
-                    match("[0-9]");
+                advanceRun(DIGIT, CharRuns.DIGIT);
 
-                return chars.emit(Token.Type.DECIMAL);
+                return Token.Type.DECIMAL;
             }
         }
 
-        return chars.emit(Token.Type.INTEGER);
+        return Token.Type.INTEGER;
     }
 
-    public Token lexCharacter() {
-            // match open apostrophe
-            match("'");
+    private Token.Type scanCharacter() {
+        // match open apostrophe
+        matchChar('\'');
 
-            // match character or escape, throws exception if empty
-            if (peek("[^'\\n\\r\\\\]"))
-                match("[^'\\n\\r\\\\]");
-            else if (peek("\\\\"))
-                lexEscape();
-            else
-                throw new ParseException("ParseException at index " + chars.index, chars.index);
+        // match character or escape, throws exception if empty
+        if (chars.has(0) && chars.get(0) != '\'' && !is(chars.get(0), LITERAL_BREAK))
+            chars.advance();
+        else if (peekChar(0, '\\'))
+            lexEscape();
+        else
+            throw new ParseException("ParseException at index " + chars.index, chars.index);
 
-            // match close apostrophe
-            if (peek("'"))
-                match("'");
-            else
-                throw new ParseException("ParseException at index " + chars.index, chars.index);
+        // match close apostrophe
+        if (!matchChar('\''))
+            throw new ParseException("ParseException at index " + chars.index, chars.index);
 
-            return chars.emit(Token.Type.CHARACTER);
+        return Token.Type.CHARACTER;
     }
 
-    public Token lexString() {
+    private Token.Type scanString() {
         // match open quotation
-        match("\"");
+        matchChar('"');
 
         // match inside of quotations, stops looping after hitting closing quotations
-        while (peek("[^\"]")) {
-            if (peek("[^\"\\n\\r\\\\]"))
-                match("[^\"\\n\\r\\\\]");
-            else if (peek("\\\\"))
+        int scanned = 0;
+        while (chars.has(0) && chars.get(0) != '"') {
+            if (!is(chars.get(0), LITERAL_BREAK)) {
+                chars.advance();
+                if (++scanned % SCALAR_RUN == 0)
+                    chars.advanceRun(CharRuns.STRING);
+            }
+            else if (chars.get(0) == '\\')
                 lexEscape();
             else
                 throw new ParseException("ParseException at index " + chars.index, chars.index);
         }
 
         // match close quotation
-        if (peek("\""))
-            match("\"");
-        else
+        if (!matchChar('"'))
             throw new ParseException("ParseException at index " + chars.index, chars.index);
 
-        return chars.emit(Token.Type.STRING);
+        return Token.Type.STRING;
     }
 
     public void lexEscape() {
-        if(peek("\\\\"))
-            match("\\\\");
-        else
+        if (!matchChar('\\'))
             throw new ParseException("ParseException at index " + chars.index, chars.index);
 
-        if(peek("[bnrt'\"\\\\]"))
-            match("[bnrt'\"\\\\]");
+        if (peekClass(0, ESCAPE))
+            chars.advance();
         else
             throw new ParseException("ParseException at index " + chars.index, chars.index);
     }
 
-    public Token lexOperator() {
-        if (peek("!", "="))
-            match("!", "=");
-        else if (peek("=", "="))
-            match("=", "=");
-        else if (peek("&", "&"))
-            match("&", "&");
-        else if (peek("\\|", "\\|"))
-            match("\\|", "\\|");
-        else
-            match(".");
+    private Token.Type scanOperator() {
+        if (peekChar(0, '!') && peekChar(1, '=')
+                || peekChar(0, '=') && peekChar(1, '=')
+                || peekChar(0, '&') && peekChar(1, '&')
+                || peekChar(0, '|') && peekChar(1, '|')) {
+            chars.advance();
+            chars.advance();
+        }
+        else if (chars.has(0)) {
+            chars.advance();
+        }
+
+        return Token.Type.OPERATOR;
+    }
+
+    /**
+     * Returns true if the character has any of the classes in the mask.
+     */
+    private static boolean is(char c, int mask) {
+        return c < 128 && (CLASSES[c] & mask) != 0;
+    }
+
+    /**
+     * Returns true if the character at the given offset has any of the classes
+     * in the mask, the table driven equivalent of {@link #peek(String...)}.
+     */
+    private boolean peekClass(int offset, int mask) {
+        return chars.has(offset) && is(chars.get(offset), mask);
+    }
+
+    private boolean peekChar(int offset, char c) {
+        return chars.has(offset) && chars.get(offset) == c;
+    }
 
-        return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Advances past the next character if it is {@code c}, returning whether
+     * it was matched.
+     */
+    private boolean matchChar(char c) {
+        boolean peek = peekChar(0, c);
+        if (peek)
+            chars.advance();
+        return peek;
     }
 
     /**
@@ -216,44 +679,476 @@ public final class Lexer {
     }
 
     /**
-     * A helper class maintaining the input string, current index of the char
-     * stream, and the current length of the token being matched.
+     * A helper class maintaining the input, current index of the char stream,
+     * and the current length of the token being matched.
      *
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * Subclasses provide the input through {@link #has(int)}, {@link
+     * #get(int)} and {@link #literal(int)}, see {@link StringCharStream} and
+     * {@link ReaderCharStream}. The index is always relative to the start of
+     * the input regardless of how it is stored.
+     */
+    public static abstract class CharStream {
+
+        protected int index = 0;
+        protected int length = 0;
+
+        public abstract boolean has(int offset);
+
+        public abstract char get(int offset);
+
+        /**
+         * Returns the characters of the current token, which starts at {@code
+         * start} and ends at {@link #index}.
+         */
+        protected abstract String literal(int start);
+
+        /**
+         * Returns the entire input for consumers that reference it directly,
+         * such as {@link TokenBuffer}, or {@code null} if the stream does not
+         * hold its input in memory.
+         */
+        public CharSequence getInput() {
+            return null;
+        }
+
+        public void advance() {
+            index++;
+            length++;
+        }
+
+        public void skip() {
+            length = 0;
+        }
+
+        /**
+         * Advances over characters which are part of the given {@link
+         * CharRuns} run, stopping at or before the first one which is not. This
+         * is only an optimization, so by default it does nothing and the lexer
+         * advances over the run one character at a time.
+         */
+        protected void advanceRun(int run) {}
+
+        public Token emit(Token.Type type) {
+            int start = index - length;
+            String literal = literal(start);
+            skip();
+            return new Token(type, literal, start);
+        }
+
+        /**
+         * Emits the current token as in {@link #emit(Token.Type)}, but interns
+         * identifiers so that their literal is the table's copy of the name.
+         */
+        public Token emit(Token.Type type, SymbolTable symbols) {
+            if (type != Token.Type.IDENTIFIER) {
+                return emit(type);
+            }
+            int start = index - length;
+            int symbol = intern(start, symbols);
+            skip();
+            String literal = symbols.getName(symbol);
+            return new Token(type, literal, start, Token.Kind.of(literal), symbol);
+        }
+
+        /**
+         * Interns the current token, which starts at {@code start}. Streams
+         * which hold the token's characters override this to intern them in
+         * place rather than through {@link #literal(int)}.
+         */
+        protected int intern(int start, SymbolTable symbols) {
+            return symbols.intern(literal(start));
+        }
+
+        /**
+         * Records the current token in the buffer rather than creating a
+         * {@link Token}.
+         */
+        public void emit(Token.Type type, TokenBuffer buffer) {
+            if (buffer.isCopied()) {
+                copy(type, index - length, buffer);
+            } else {
+                buffer.add(type, index - length, length);
+            }
+            skip();
+        }
+
+        /**
+         * Records the current token, which starts at {@code start}, in a
+         * buffer which copies its text. Streams which hold the token's
+         * characters override this to copy them in place rather than through
+         * {@link #literal(int)}.
+         */
+        protected void copy(Token.Type type, int start, TokenBuffer buffer) {
+            buffer.add(type, start, literal(start), 0, length);
+        }
+
+    }
+
+    /**
+     * A char stream over an input string.
      */
-    public static final class CharStream {
+    public static final class StringCharStream extends CharStream {
 
         private final String input;
-        private int index = 0;
-        private int length = 0;
+        private final int end;
+        private char[] scratch = null;
+
+        public StringCharStream(String input) {
+            this(input, 0, input.length());
+        }
 
-        public CharStream(String input) {
+        /**
+         * Creates a char stream over the range [start, end) of the input. The
+         * index still starts at {@code start}, so tokens have the same indices
+         * as they would when lexing the entire input.
+         */
+        public StringCharStream(String input, int start, int end) {
             this.input = input;
+            this.index = start;
+            this.end = end;
         }
 
+        @Override
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < end;
         }
 
+        @Override
         public char get(int offset) {
             return input.charAt(index + offset);
         }
 
+        @Override
+        protected String literal(int start) {
+            return input.substring(start, index);
+        }
+
+        @Override
+        protected int intern(int start, SymbolTable symbols) {
+            return symbols.intern(input, start, index - start);
+        }
+
+        /**
+         * Copies the input into a scratch buffer a block at a time to scan it,
+         * since the characters of a string cannot be loaded directly.
+         */
+        @Override
+        protected void advanceRun(int run) {
+            if (!CharRuns.isEnabled()) {
+                return;
+            }
+            if (scratch == null) {
+                scratch = new char[256];
+            }
+            int count;
+            int scanned;
+            do {
+                count = Math.min(end - index, scratch.length);
+                input.getChars(index, index + count, scratch, 0);
+                scanned = CharRuns.scan(scratch, 0, count, run);
+                index += scanned;
+                length += scanned;
+            } while (scanned == count && count > 0);
+        }
+
+        @Override
+        public CharSequence getInput() {
+            return input;
+        }
+
+    }
+
+    /**
+     * A char stream which reads its input through a fixed size buffer. When
+     * the lookahead runs past the end of the buffer, the current token is
+     * moved to the front and the rest of the buffer is refilled, so tokens and
+     * literals may cross any number of reads. The buffer only grows if a
+     * single token is longer than it, meaning memory use is bounded by the
+     * longest token rather than the size of the input.
+     */
+    public static final class ReaderCharStream extends CharStream {
+
+        public static final int DEFAULT_CAPACITY = 8192;
+
+        private final Reader reader;
+        private char[] buffer;
+        private int start = 0; // index of buffer[0] within the input
+        private int limit = 0; // number of characters read into the buffer
+        private boolean eof = false;
+
+        public ReaderCharStream(Reader reader, int capacity) {
+            this.reader = reader;
+            this.buffer = new char[Math.max(capacity, 16)];
+        }
+
+        @Override
+        public boolean has(int offset) {
+            int position = index + offset - start;
+            return position < limit || fill(position);
+        }
+
+        @Override
+        public char get(int offset) {
+            int position = index + offset - start;
+            if (position >= limit && !fill(position)) {
+                throw new IndexOutOfBoundsException("Index " + (index + offset) + " is past the end of the input.");
+            }
+            return buffer[position];
+        }
+
+        @Override
+        protected String literal(int start) {
+            return new String(buffer, start - this.start, index - start);
+        }
+
+        @Override
+        protected int intern(int start, SymbolTable symbols) {
+            return symbols.intern(CharBuffer.wrap(buffer), start - this.start, index - start);
+        }
+
+        @Override
+        protected void copy(Token.Type type, int start, TokenBuffer buffer) {
+            buffer.add(type, start, CharBuffer.wrap(this.buffer), start - this.start, length);
+        }
+
+        /**
+         * Scans the characters already in the buffer, leaving any past it to
+         * the lexer so that scanning never reads.
+         */
+        @Override
+        protected void advanceRun(int run) {
+            int from = index - start;
+            int scanned = CharRuns.scan(buffer, from, limit, run) - from;
+            index += scanned;
+            length += scanned;
+        }
+
+        /**
+         * Reads until the buffer contains {@code position}, returning false if
+         * the input ends first. Everything before the current token is
+         * discarded to make room.
+         */
+        private boolean fill(int position) {
+            if (eof) {
+                return false;
+            }
+            int discard = index - length - start;
+            if (discard > 0) {
+                System.arraycopy(buffer, discard, buffer, 0, limit - discard);
+                start += discard;
+                limit -= discard;
+                position -= discard;
+            }
+            if (position >= buffer.length) {
+                char[] grown = new char[Math.max(buffer.length * 2, position + 1)];
+                System.arraycopy(buffer, 0, grown, 0, limit);
+                buffer = grown;
+            }
+            try {
+                while (position >= limit) {
+                    int read = reader.read(buffer, limit, buffer.length - limit);
+                    if (read < 0) {
+                        eof = true;
+                        return false;
+                    }
+                    limit += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * A char stream over UTF-8 encoded bytes, typically a file mapped with
+     * {@link #map(Path)}. Since tokens are ASCII outside of character and
+     * string literals, bytes are classified directly and only the literals of
+     * emitted tokens are decoded, avoiding a decoded copy of the input.
+     *
+     * Indices are still counted in UTF-16 chars so that tokens match those of
+     * {@link StringCharStream}; a code point outside the BMP occupies two
+     * indices and {@link #low} tracks whether the stream is on its second half.
+     * Malformed bytes are read as U+FFFD, one byte at a time.
+     */
+    public static final class MappedCharStream extends CharStream {
+
+        private final ByteBuffer bytes;
+        private final int limit;
+        private int position = 0;
+        private boolean low = false;
+        private int tokenPosition = 0;
+        private boolean tokenLow = false;
+        private final StringBuilder literal = new StringBuilder();
+
+        public MappedCharStream(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.limit = bytes.limit();
+        }
+
+        /**
+         * Maps the file read-only. Files must be smaller than 2GB, the limit
+         * of a single mapping.
+         */
+        public static MappedCharStream map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new MappedCharStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        @Override
+        public boolean has(int offset) {
+            if (!low && position + offset < limit && isAscii(offset)) {
+                return true;
+            }
+            int p = position;
+            boolean half = low;
+            for (int i = 0; i < offset && p < limit; i++) {
+                if (!half && width(p) == 4) {
+                    half = true;
+                }
+                else {
+                    p += width(p);
+                    half = false;
+                }
+            }
+            return p < limit;
+        }
+
+        @Override
+        public char get(int offset) {
+            if (!low && position + offset < limit && isAscii(offset)) {
+                return (char) bytes.get(position + offset);
+            }
+            int p = position;
+            boolean half = low;
+            for (int i = 0; i < offset; i++) {
+                if (!half && width(p) == 4) {
+                    half = true;
+                }
+                else {
+                    p += width(p);
+                    half = false;
+                }
+            }
+            if (p >= limit) {
+                throw new IndexOutOfBoundsException("Index " + (index + offset) + " is past the end of the input.");
+            }
+            int codePoint = decode(p);
+            if (Character.isSupplementaryCodePoint(codePoint)) {
+                return half ? Character.lowSurrogate(codePoint) : Character.highSurrogate(codePoint);
+            }
+            return (char) codePoint;
+        }
+
+        @Override
         public void advance() {
-            index++;
-            length++;
+            if (!low && width(position) == 4) {
+                low = true;
+            }
+            else {
+                position += width(position);
+                low = false;
+            }
+            super.advance();
         }
 
+        @Override
         public void skip() {
-            length = 0;
+            super.skip();
+            tokenPosition = position;
+            tokenLow = low;
         }
 
-        public Token emit(Token.Type type) {
-            int start = index - length;
-            skip();
-            return new Token(type, input.substring(start, index), start);
+        @Override
+        protected String literal(int start) {
+            int from = decodeToken();
+            return literal.substring(from, from + length);
+        }
+
+        @Override
+        protected int intern(int start, SymbolTable symbols) {
+            return symbols.intern(literal, decodeToken(), length);
+        }
+
+        @Override
+        protected void copy(Token.Type type, int start, TokenBuffer buffer) {
+            buffer.add(type, start, literal, decodeToken(), length);
+        }
+
+        /**
+         * Decodes the current token into {@link #literal}, returning the
+         * offset of its first char.
+         */
+        private int decodeToken() {
+            literal.setLength(0);
+            int p = tokenPosition;
+            // include the whole of a code point the token ends halfway through
+            int end = low ? position + width(position) : position;
+            while (p < end) {
+                literal.appendCodePoint(decode(p));
+                p += width(p);
+            }
+            return tokenLow ? 1 : 0;
+        }
+
+        /**
+         * Returns true if the bytes from the current position through {@code
+         * offset} are all ASCII, in which case bytes and chars line up.
+         */
+        private boolean isAscii(int offset) {
+            for (int i = 0; i <= offset; i++) {
+                if (bytes.get(position + i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the number of bytes in the sequence at {@code p}, which is 4
+         * exactly when it encodes a supplementary code point.
+         */
+        private int width(int p) {
+            int lead = bytes.get(p) & 0xFF;
+            int width = lead < 0x80 ? 1 : lead < 0xC2 ? 0 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : lead < 0xF5 ? 4 : 0;
+            if (width == 0 || p + width > limit) {
+                return 1;
+            }
+            for (int i = 1; i < width; i++) {
+                if ((bytes.get(p + i) & 0xC0) != 0x80) {
+                    return 1;
+                }
+            }
+            int codePoint = decodeValid(p, width);
+            // reject overlong, surrogate and out of range encodings
+            if (width == 3 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint))
+                    || width == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT)) {
+                return 1;
+            }
+            return width;
+        }
+
+        private int decode(int p) {
+            int width = width(p);
+            if (width == 1) {
+                int lead = bytes.get(p);
+                return lead >= 0 ? lead : 0xFFFD;
+            }
+            return decodeValid(p, width);
+        }
+
+        private int decodeValid(int p, int width) {
+            int codePoint = bytes.get(p) & (0xFF >> (width + 1));
+            for (int i = 1; i < width; i++) {
+                codePoint = (codePoint << 6) | (bytes.get(p + i) & 0x3F);
+            }
+            return codePoint;
         }
 
     }
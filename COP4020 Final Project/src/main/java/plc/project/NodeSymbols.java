@@ -0,0 +1,104 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * The symbol ids of the names of AST nodes in a {@link SymbolTable}, kept in
+ * side tables indexed by {@link Ast#getId()} as in {@link Analysis}. A name
+ * is interned the first time its node is resolved rather than on every visit,
+ * without storing anything in the AST, so nodes shared through an {@link
+ * AstPool} or visited by other threads are never modified.
+ *
+ * Ids are only unique among the nodes of one parser, so each entry also
+ * keeps the node it was resolved for and is only used for that same node.
+ * An analyzer or interpreter given ASTs from several parsers resolves a node
+ * again whenever its slot was last used by a node of another AST.
+ *
+ * Each {@link Analyzer} and {@link Interpreter} keeps its own, so it is not
+ * thread-safe. The tables are cleared if the scope's table changes, and nodes
+ * without an id, which were not built by a {@link Parser}, are interned each
+ * time.
+ */
+final class NodeSymbols {
+
+    private SymbolTable symbols = null;
+    private Ast[] nodes = new Ast[0]; // the node each slot was resolved for
+    private int[] ids = new int[0];
+    private int[][] parameters = new int[0][];
+
+    public int get(Ast.Global ast, SymbolTable symbols) {
+        return get(ast, ast.getName(), symbols);
+    }
+
+    public int get(Ast.Function ast, SymbolTable symbols) {
+        return get(ast, ast.getName(), symbols);
+    }
+
+    public int get(Ast.Statement.Declaration ast, SymbolTable symbols) {
+        return get(ast, ast.getName(), symbols);
+    }
+
+    public int get(Ast.Expression.Access ast, SymbolTable symbols) {
+        return get(ast, ast.getName(), symbols);
+    }
+
+    public int get(Ast.Expression.Function ast, SymbolTable symbols) {
+        return get(ast, ast.getName(), symbols);
+    }
+
+    /**
+     * Returns the symbol id of the parameter at {@code index}, resolving all
+     * the parameters of the function together.
+     */
+    public int getParameter(Ast.Function ast, int index, SymbolTable symbols) {
+        int id = ast.getId();
+        if (id < 0) {
+            return symbols.intern(ast.getParameters().get(index));
+        }
+        use(ast, symbols, id);
+        int[] resolved = parameters[id];
+        if (resolved == null) {
+            resolved = new int[ast.getParameters().size()];
+            for (int i = 0; i < resolved.length; i++) {
+                resolved[i] = symbols.intern(ast.getParameters().get(i));
+            }
+            parameters[id] = resolved;
+        }
+        return resolved[index];
+    }
+
+    private int get(Ast ast, String name, SymbolTable symbols) {
+        int id = ast.getId();
+        if (id < 0) {
+            return symbols.intern(name);
+        }
+        use(ast, symbols, id);
+        if (ids[id] < 0) {
+            ids[id] = symbols.intern(name);
+        }
+        return ids[id];
+    }
+
+    /**
+     * Clears the tables if they were resolved in another table, grows them to
+     * hold {@code id} and clears the slot if it belongs to another node.
+     */
+    private void use(Ast ast, SymbolTable symbols, int id) {
+        if (this.symbols != symbols) {
+            this.symbols = symbols;
+            Arrays.fill(nodes, null);
+        }
+        if (id >= nodes.length) {
+            int capacity = Math.max(id + 1, nodes.length + (nodes.length >> 1));
+            nodes = Arrays.copyOf(nodes, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            parameters = Arrays.copyOf(parameters, capacity);
+        }
+        if (nodes[id] != ast) {
+            nodes[id] = ast;
+            ids[id] = -1;
+            parameters[id] = null;
+        }
+    }
+
+}
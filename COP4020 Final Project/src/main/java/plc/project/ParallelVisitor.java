@@ -0,0 +1,287 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A traversal which visits independent subtrees of an AST in parallel on a
+ * {@link ForkJoinPool}, for whole-program passes such as hashing, metrics
+ * and validation on large inputs.
+ *
+ * Unlike an {@link Ast.Visitor}, which keeps its state in fields such as the
+ * scope of the {@link Analyzer}, a pass is a fold: the result of a node is
+ * computed by {@link #visit(Ast, Object, List)} from the results of its
+ * children, and state flowing down the tree is an immutable context which
+ * {@link #enter(Ast, Object)} derives for the children of each node. Each
+ * task carries its own context, so children can be visited in any order and
+ * on any thread. Passes whose results depend on earlier siblings, such as
+ * resolving names declared by previous statements, do not fit this model.
+ *
+ * The children of a node are visited in parallel when {@link
+ * #granularity(Ast, List)} says so; by default the globals and functions of
+ * an {@link Ast.Source} and the elements of large lists and argument lists.
+ * Other children are visited sequentially by the same task. Deferred
+ * function bodies are parsed by the task visiting the function, so they are
+ * also parsed in parallel.
+ *
+ * @param <C> the context passed down the tree
+ * @param <R> the result of each node
+ */
+public abstract class ParallelVisitor<C, R> {
+
+    /**
+     * The number of children above which the elements of a list or the
+     * arguments of a call are visited in parallel.
+     */
+    private static final int THRESHOLD = 1024;
+
+    private static final Children CHILDREN = new Children();
+
+    /**
+     * Visits {@code ast} with the given context on the common pool and
+     * returns its result.
+     */
+    public final R invoke(Ast ast, C context) {
+        return invoke(ForkJoinPool.commonPool(), ast, context);
+    }
+
+    public final R invoke(ForkJoinPool pool, Ast ast, C context) {
+        return pool.invoke(new NodeTask(ast, context));
+    }
+
+    /**
+     * Computes the result of a node from the results of its children, which
+     * are in the order they appear in the source:
+     *
+     *  - {@link Ast.Source}: globals then functions
+     *  - {@link Ast.Global}: the value, if present
+     *  - {@link Ast.Function}: statements
+     *  - {@link Ast.Statement.Expression}: the expression
+     *  - {@link Ast.Statement.Declaration}: the value, if present
+     *  - {@link Ast.Statement.Assignment}: the receiver then the value
+     *  - {@link Ast.Statement.If}: the condition, then statements then else statements
+     *  - {@link Ast.Statement.Switch}: the condition then cases
+     *  - {@link Ast.Statement.Case}: the value, if present, then statements
+     *  - {@link Ast.Statement.While}: the condition then statements
+     *  - {@link Ast.Statement.Return}: the value
+     *  - {@link Ast.Expression.Group}: the expression
+     *  - {@link Ast.Expression.Binary}: the left then right operand
+     *  - {@link Ast.Expression.Access}: the offset, if present
+     *  - {@link Ast.Expression.Function}: arguments
+     *  - {@link Ast.Expression.PlcList}: values
+     *
+     * This may be called concurrently for different nodes, so it must not
+     * modify shared state without synchronization.
+     */
+    protected abstract R visit(Ast ast, C context, List<R> children);
+
+    /**
+     * Returns the context for the children of {@code ast}, such as the
+     * enclosing function or the depth. By default the context is unchanged.
+     */
+    protected C enter(Ast ast, C context) {
+        return context;
+    }
+
+    /**
+     * Returns how many children of {@code ast} each task visits, splitting
+     * them into tasks of at most that many, or 0 to visit them sequentially.
+     * By default each global and function of a source is its own task, lists
+     * and calls with more than 1024 elements are split into tasks of 256
+     * elements, and the children of other nodes are sequential.
+     */
+    protected int granularity(Ast ast, List<Ast> children) {
+        if (ast instanceof Ast.Source) {
+            return 1;
+        } else if (children.size() > THRESHOLD && (ast instanceof Ast.Expression.PlcList || ast instanceof Ast.Expression.Function)) {
+            return THRESHOLD / 4;
+        }
+        return 0;
+    }
+
+    /**
+     * Visits a node, forking tasks for its children if it is split.
+     */
+    private final class NodeTask extends RecursiveTask<R> {
+
+        private final Ast ast;
+        private final C context;
+
+        private NodeTask(Ast ast, C context) {
+            this.ast = ast;
+            this.context = context;
+        }
+
+        @Override
+        protected R compute() {
+            List<Ast> children = ast.accept(CHILDREN);
+            C inner = enter(ast, context);
+            int granularity = children.isEmpty() ? 0 : granularity(ast, children);
+            Object[] results = new Object[children.size()];
+            if (granularity > 0 && children.size() > granularity) {
+                new RangeTask(children, inner, results, 0, children.size(), granularity).compute();
+            } else {
+                for (int i = 0; i < children.size(); i++) {
+                    results[i] = new NodeTask(children.get(i), inner).compute();
+                }
+            }
+            @SuppressWarnings("unchecked")
+            List<R> list = (List<R>) Collections.unmodifiableList(Arrays.asList(results));
+            return visit(ast, context, list);
+        }
+
+    }
+
+    /**
+     * Visits a range of the children of a node, splitting it in half until
+     * it is within the granularity.
+     */
+    private final class RangeTask extends RecursiveAction {
+
+        private final List<Ast> children;
+        private final C context;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+        private final int granularity;
+
+        private RangeTask(List<Ast> children, C context, Object[] results, int from, int to, int granularity) {
+            this.children = children;
+            this.context = context;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.granularity = granularity;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= granularity) {
+                for (int i = from; i < to; i++) {
+                    results[i] = new NodeTask(children.get(i), context).compute();
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(children, context, results, from, middle, granularity),
+                        new RangeTask(children, context, results, middle, to, granularity));
+            }
+        }
+
+    }
+
+    /**
+     * Lists the children of a node in the order documented on {@link
+     * #visit(Ast, Object, List)}.
+     */
+    private static final class Children implements Ast.Visitor<List<Ast>> {
+
+        private static List<Ast> of(Object... children) {
+            List<Ast> list = new ArrayList<>(children.length);
+            for (Object child : children) {
+                if (child instanceof Ast) {
+                    list.add((Ast) child);
+                } else if (child instanceof List) {
+                    for (Object element : (List<?>) child) {
+                        list.add((Ast) element);
+                    }
+                } else if (child instanceof Optional) {
+                    ((Optional<?>) child).ifPresent(value -> list.add((Ast) value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Source ast) {
+            return of(ast.getGlobals(), ast.getFunctions());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Global ast) {
+            return of(ast.getValue());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Function ast) {
+            return of(ast.getStatements());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Statement.Expression ast) {
+            return of(ast.getExpression());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Statement.Declaration ast) {
+            return of(ast.getValue());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Statement.Assignment ast) {
+            return of(ast.getReceiver(), ast.getValue());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Statement.If ast) {
+            return of(ast.getCondition(), ast.getThenStatements(), ast.getElseStatements());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Statement.Switch ast) {
+            return of(ast.getCondition(), ast.getCases());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Statement.Case ast) {
+            return of(ast.getValue(), ast.getStatements());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Statement.While ast) {
+            return of(ast.getCondition(), ast.getStatements());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Statement.Return ast) {
+            return of(ast.getValue());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Expression.Literal ast) {
+            return List.of();
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Expression.Group ast) {
+            return of(ast.getExpression());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Expression.Binary ast) {
+            return of(ast.getLeft(), ast.getRight());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Expression.Access ast) {
+            return of(ast.getOffset());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Expression.Function ast) {
+            return of(ast.getArguments());
+        }
+
+        @Override
+        public List<Ast> visit(Ast.Expression.PlcList ast) {
+            return of(ast.getValues());
+        }
+
+    }
+
+}
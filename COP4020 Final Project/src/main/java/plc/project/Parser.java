@@ -1,10 +1,18 @@
 package plc.project;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -21,10 +29,149 @@ import java.util.Optional;
  */
 public final class Parser {
 
+    private static final int LOGICAL = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+
+    /**
+     * The precedence of each binary operator indexed by {@link Token.Kind}
+     * ordinal, or 0 for kinds which are not binary operators.
+     */
+    private static final int[] PRECEDENCE = new int[Token.Kind.values().length];
+
+    static {
+        for (Token.Kind kind : new Token.Kind[] {Token.Kind.AND, Token.Kind.OR}) {
+            PRECEDENCE[kind.ordinal()] = LOGICAL;
+        }
+        for (Token.Kind kind : new Token.Kind[] {Token.Kind.LESS, Token.Kind.GREATER, Token.Kind.EQUAL, Token.Kind.NOT_EQUAL}) {
+            PRECEDENCE[kind.ordinal()] = COMPARISON;
+        }
+        for (Token.Kind kind : new Token.Kind[] {Token.Kind.PLUS, Token.Kind.MINUS}) {
+            PRECEDENCE[kind.ordinal()] = ADDITIVE;
+        }
+        for (Token.Kind kind : new Token.Kind[] {Token.Kind.TIMES, Token.Kind.DIVIDE, Token.Kind.POWER}) {
+            PRECEDENCE[kind.ordinal()] = MULTIPLICATIVE;
+        }
+    }
+
     private final TokenStream tokens;
+    private boolean lazy = false;
+    private AtomicInteger ids = new AtomicInteger(); // shared with the parsers of ranges
+    private AstPool pool = null;
+    private final AstBuilder astBuilder = new AstBuilder(null);
 
+    /**
+     * Creates a parser over a list of tokens. Names are interned into a new
+     * {@link SymbolTable} by their literal, ignoring any symbol ids.
+     */
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this.tokens = new ListTokenStream(tokens, new SymbolTable(), false);
+    }
+
+    /**
+     * Creates a parser over tokens whose symbol ids were assigned by {@code
+     * symbols}, such as those of {@link Lexer#lexParallel(String,
+     * java.util.concurrent.ForkJoinPool, int, SymbolTable)}.
+     */
+    public Parser(List<Token> tokens, SymbolTable symbols) {
+        this.tokens = new ListTokenStream(tokens, symbols, true);
+    }
+
+    /**
+     * Creates a parser which reads directly from a {@link TokenBuffer}, only
+     * materializing literals for the tokens it consumes.
+     */
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new BufferTokenStream(tokens);
+    }
+
+    /**
+     * Creates a parser which pulls tokens from the lexer as they are needed,
+     * keeping only a small window of tokens in memory. Lexing errors are thrown
+     * once the parser reaches the invalid token.
+     */
+    public Parser(Lexer lexer) {
+        this.tokens = new LexerTokenStream(lexer);
+    }
+
+    private Parser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Returns the table the names of the AST are interned in. Passing it to
+     * {@link Scope#Scope(Scope, SymbolTable)} lets the analyzer and interpreter
+     * resolve names with the same ids.
+     */
+    public SymbolTable getSymbols() {
+        return tokens.symbols;
+    }
+
+    /**
+     * Sets whether {@link #parseFunction()} defers parsing function bodies.
+     * A deferred body is skipped by finding its matching {@code END}, counting
+     * {@code DO} and {@code SWITCH} as opening a block, and is parsed the
+     * first time {@link Ast.Function#getStatements()} is called, so functions
+     * which are never analyzed or run are never parsed.
+     *
+     * Errors within a deferred body are thrown by {@code getStatements()}
+     * rather than by the parser. A body is only deferred when the scan is
+     * sure to find the same {@code END} as parsing would, so bodies which use
+     * those keywords as names, or which may not end where the scan says, are
+     * parsed eagerly. Bodies are always parsed eagerly from a {@link Lexer},
+     * whose tokens are not retained.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Sets the pool which constant expressions are shared through, or {@code
+     * null} to create every node. Literals, and groups and binary expressions
+     * of shared operands, are then the pool's instances, so the same
+     * expression parsed twice, by this or another parser using the pool, is
+     * the same object. Nodes are numbered from the pool's counter, so this
+     * must be set before parsing.
+     */
+    public void setPool(AstPool pool) {
+        this.pool = pool;
+        this.ids = pool != null ? pool.ids : new AtomicInteger();
+    }
+
+    /**
+     * Returns the number of node ids assigned so far, which is one more than
+     * the largest {@link Ast#getId()}. Each node is given the next id as it
+     * is created, including by the parsers of bodies parsed in parallel or
+     * deferred, so this can size the side tables of an {@link Analysis}.
+     * Ids are not reused, so nodes discarded while falling back from a
+     * parallel parse leave gaps.
+     */
+    public int getNodeCount() {
+        return ids.get();
+    }
+
+    /**
+     * Continues numbering nodes from {@code count}, for {@link
+     * IncrementalParser} to keep ids unique across parsers.
+     */
+    void setNodeCount(int count) {
+        ids.set(count);
+    }
+
+    /**
+     * Returns the index of the next token, for {@link IncrementalParser}.
+     */
+    int getIndex() {
+        return tokens.index;
+    }
+
+    /**
+     * Moves to the token at {@code index}, which must be within the tokens
+     * given to the parser, for {@link IncrementalParser}.
+     */
+    void setIndex(int index) {
+        tokens.index = index;
     }
 
     /**
@@ -32,23 +179,259 @@ public final class Parser {
      */
     //source = global* function*
     public Ast.Source parseSource() throws ParseException {
+        return (Ast.Source) parseSource(astBuilder);
+    }
+
+    private <N> N parseSource(Builder<N> builder) throws ParseException {
+
+        int start = tokens.index;
+        List<N> globals = new ArrayList<>();
+        List<N> functions = new ArrayList<>();
+
+        parseDeclarations(builder, globals::add, functions::add);
+
+        return builder.source(start, globals, functions);
+    }
+
+    /**
+     * Parses the {@code source} rule, passing each global and function to the
+     * given consumer as soon as it is parsed rather than building an {@link
+     * Ast.Source}. Later passes can then work on earlier declarations while
+     * the rest of the input is parsed, such as from a {@link Lexer} over a
+     * {@link java.io.Reader}. Declarations before an invalid one are still
+     * consumed before the {@link ParseException} is thrown.
+     */
+    public void parseSource(Consumer<Ast.Global> globals, Consumer<Ast.Function> functions) throws ParseException {
+        parseDeclarations(astBuilder, global -> globals.accept((Ast.Global) global), function -> functions.accept((Ast.Function) function));
+    }
+
+    /**
+     * Parses the globals and functions of the {@code source} rule, passing
+     * each to its consumer as it is parsed.
+     */
+    private <N> void parseDeclarations(Builder<N> builder, Consumer<N> globals, Consumer<N> functions) throws ParseException {
+        boolean function = false;
+        while (tokens.has(0)) {
+            function = function || peek(Token.Kind.FUN);
+            (function ? functions : globals).accept(parseDeclaration(builder, function));
+        }
+    }
+
+    /**
+     * Parses the next declaration of the {@code source} rule, which is a
+     * function once {@code function} is set, as it is from the first {@code
+     * FUN} on, and a global before that.
+     */
+    private <N> N parseDeclaration(Builder<N> builder, boolean function) throws ParseException {
+        if (function && peek(Token.Kind.FUN))
+            return parseFunction(builder);
+        if (!function && (peek(Token.Kind.LIST) || peek(Token.Kind.VAR) || peek(Token.Kind.VAL)))
+            return parseGlobal(builder);
+        throw error("SOURCE", "FUN");
+    }
+
+    /**
+     * Returns a publisher which parses the {@code source} rule on {@code
+     * executor} once subscribed, publishing each {@link Ast.Global} and {@link
+     * Ast.Function} as it is parsed. Declarations are only parsed as they are
+     * requested, so parsing stops while the subscriber has no outstanding
+     * demand, and a {@link ParseException} is passed to {@code onError} after
+     * the preceding declarations. The input can only be parsed once, so the
+     * publisher accepts a single subscriber.
+     *
+     * Declarations are parsed and delivered by the same task, which ends
+     * whenever demand runs out and is resubmitted by the next request, so no
+     * thread is held while the subscriber is not requesting and any executor,
+     * including a single thread, can be used.
+     */
+    public Flow.Publisher<Ast> publishSource(Executor executor) {
+        AtomicBoolean subscribed = new AtomicBoolean();
+        return subscriber -> {
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+
+                    @Override
+                    public void request(long n) {}
+
+                    @Override
+                    public void cancel() {}
+
+                });
+                subscriber.onError(new IllegalStateException("The source has already been published."));
+                return;
+            }
+            subscriber.onSubscribe(new SourceSubscription(subscriber, executor));
+        };
+    }
+
+    /**
+     * The subscription of {@link #publishSource(Executor)}. Requests add to
+     * the demand and schedule a drain on the executor unless one is already
+     * running, which parses and delivers declarations until the demand is met,
+     * the input ends or the subscription is cancelled. {@link #pending}
+     * counts the requests since the drain started, so it never runs twice at
+     * once and never misses a request.
+     */
+    private final class SourceSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super Ast> subscriber;
+        private final Executor executor;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private boolean function = false; // only read by the drain
+        private boolean done = false;
+
+        private SourceSubscription(Flow.Subscriber<? super Ast> subscriber, Executor executor) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("The number of requested declarations must be positive, received " + n + "."));
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                while (!done && !cancelled && demand.get() > 0) {
+                    Ast declaration = null;
+                    try {
+                        if (tokens.has(0)) {
+                            function = function || peek(Token.Kind.FUN);
+                            declaration = parseDeclaration(astBuilder, function);
+                        }
+                    } catch (RuntimeException e) {
+                        done = true;
+                        subscriber.onError(e);
+                        break;
+                    }
+                    if (declaration == null) {
+                        done = true;
+                        subscriber.onComplete();
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(declaration);
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
 
-        List<Ast.Global> globals = new ArrayList<>();
-        List<Ast.Function> functions = new ArrayList<>();
-        if (!tokens.has(0))
-            return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Parses the {@code source} rule with the function bodies parsed in
+     * parallel on the common pool, see {@link #parseSourceParallel(ForkJoinPool)}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the {@code source} rule as in {@link #parseSource()}, parsing
+     * function bodies in parallel in the given pool.
+     *
+     * The source is parsed by the same production, with each body which
+     * {@link #setLazy(boolean)} would defer submitted to the pool as its
+     * function is found instead, so only the bodies are parsed in parallel.
+     * All of them are parsed before this returns, so no function of the
+     * result is deferred. If any declaration or body is invalid the source
+     * is parsed again sequentially, so the same {@link ParseException} is
+     * thrown at the earliest invalid index as by {@link #parseSource()}.
+     *
+     * Parsing is sequential for a parser reading from a {@link Lexer}, whose
+     * tokens can only be read in order, and for a lazy parser, whose bodies
+     * are deferred rather than parsed.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        if (lazy || !(tokens instanceof IndexedTokenStream))
+            return parseSource();
+
+        int start = tokens.index;
+        AstBuilder builder = new AstBuilder(pool);
+        lazy = true;
+        try {
+            Ast.Source source = (Ast.Source) parseSource(builder);
+            source.getFunctions().forEach(Ast.Function::getStatements);
+            return source;
+        } catch (ParseException e) {
+            builder.forked.forEach(task -> task.cancel(false));
+        } finally {
+            lazy = false;
+        }
+
+        tokens.index = start;
+        return parseSource();
+    }
 
+    /**
+     * Parses the {@code source} rule into a {@link FlatAst} rather than {@link
+     * Ast} objects. The productions are those of {@link #parseSource()}, with
+     * the nodes built by a {@link FlatBuilder}, so the grammar and every
+     * {@link ParseException} are the same and {@link FlatAst#toSource()}
+     * returns the AST it would have built. A {@link FlatAst} cannot defer
+     * function bodies, so with {@link #setLazy(boolean)} each body is still
+     * parsed as its function is added.
+     */
+    public FlatAst parseFlatSource() throws ParseException {
+        FlatAst ast = new FlatAst(tokens.symbols, 64);
+        parseSource(new FlatBuilder(ast));
+        ast.finish();
+        return ast;
+    }
+    /**
+     * Matches the pattern, or throws the exception for the expected token in
+     * the format used throughout the parser.
+     */
+    private void expect(Object pattern, String rule, String expected) throws ParseException {
+        if (!match(pattern))
+            throw error(rule, expected);
+    }
 
-        while (peek("LIST") || peek("VAR") || peek("VAL"))
-            globals.add(parseGlobal());
+    private ParseException error(String rule, String expected) {
+        int index = errorIndex();
+        return new ParseException("Exception in " + rule + ", expected " + expected + " at index " + index, index);
+    }
 
-        while (peek("FUN"))
-            functions.add(parseFunction());
+    /**
+     * Gives a newly created node the next id, see {@link #getNodeCount()}.
+     */
+    private <T extends Ast> T node(T ast) {
+        ast.setId(ids.getAndIncrement());
+        return ast;
+    }
 
-        if (tokens.has(0))
-            throw new ParseException("Exception in SOURCE, expected FUN at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
+    /**
+     * Views a list of nodes built by the {@link AstBuilder} as the subclass
+     * the production creates, which the grammar ensures.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Ast> List<T> cast(List<Ast> nodes) {
+        return (List<T>) (List<?>) nodes;
+    }
 
-        return new Ast.Source(globals, functions);
+    /**
+     * Returns the index of the next token, or of the end of the last token if
+     * there are none left.
+     */
+    private int errorIndex() {
+        return tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
     }
 
     /**
@@ -56,22 +439,21 @@ public final class Parser {
      * next tokens start a global, aka {@code LIST|VAL|VAR}.
      */
     public Ast.Global parseGlobal() throws ParseException {
+        return (Ast.Global) parseGlobal(astBuilder);
+    }
 
-        Ast.Global result;
+    private <N> N parseGlobal(Builder<N> builder) throws ParseException {
 
-        if (peek("LIST"))
-            result = parseList();
-        else if (peek("VAR"))
-            result = parseMutable();
-        else //peek("VAL")
-            result = parseImmutable();
+        N result;
 
-        if (!match(";"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in GLOBAL, expected ';' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in GLOBAL, expected ';' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        if (peek(Token.Kind.LIST))
+            result = parseList(builder);
+        else if (peek(Token.Kind.VAR))
+            result = parseMutable(builder);
+        else //peek(Token.Kind.VAL)
+            result = parseImmutable(builder);
+
+        expect(Token.Kind.SEMICOLON, "GLOBAL", "';'");
 
         return result;
     }
@@ -81,61 +463,31 @@ public final class Parser {
      * next token declares a list, aka {@code LIST}.
      */
     public Ast.Global parseList() throws ParseException {
+        return (Ast.Global) parseList(astBuilder);
+    }
 
-        List<Ast.Expression> value = new ArrayList<>();
-        String name;
-        String type;
-        match("LIST");
-
-        if (!match(Token.Type.IDENTIFIER))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in LIST, expected identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in LIST, expected identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        name = tokens.get(-1).getLiteral();
-
-        if (!match(":"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in LIST, expected ':' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in LIST, expected ':' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-
-        if (!match(Token.Type.IDENTIFIER))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in LIST, expected identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in LIST, expected identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        type = tokens.get(-1).getLiteral();
+    private <N> N parseList(Builder<N> builder) throws ParseException {
 
-        if (!match("="))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in LIST, expected '=' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in LIST, expected '=' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        int start = tokens.index;
+        List<N> values = new ArrayList<>();
+        match(Token.Kind.LIST);
 
-        if (!match("["))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in LIST, expected '[' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in LIST, expected '[' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        expect(Token.Type.IDENTIFIER, "LIST", "identifier");
+        int name = tokens.symbol(-1);
+        expect(Token.Kind.COLON, "LIST", "':'");
+        expect(Token.Type.IDENTIFIER, "LIST", "identifier");
+        int type = tokens.symbol(-1);
+        expect(Token.Kind.ASSIGN, "LIST", "'='");
+        expect(Token.Kind.LEFT_BRACKET, "LIST", "'['");
+        int list = tokens.index - 1;
 
-        value.add(parseExpression());
-        while (match(","))
-            value.add(parseExpression());
+        values.add(parseExpression(builder));
+        while (match(Token.Kind.COMMA))
+            values.add(parseExpression(builder));
 
-        if (!match("]"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in LIST, expected ']' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in LIST, expected ']' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        expect(Token.Kind.RIGHT_BRACKET, "LIST", "']'");
 
-        return new Ast.Global(name, type, true, Optional.of(new Ast.Expression.PlcList(value)));
+        return builder.global(start, name, type, true, builder.list(list, values));
     }
 
     /**
@@ -143,39 +495,25 @@ public final class Parser {
      * next token declares a mutable global variable, aka {@code VAR}.
      */
     public Ast.Global parseMutable() throws ParseException {
+        return (Ast.Global) parseMutable(astBuilder);
+    }
 
-        String name;
-        String type;
-        Optional<Ast.Expression> value = Optional.empty();
-        match("VAR");
-
-        if (!match(Token.Type.IDENTIFIER))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in MUTABLE, expected an identifier after VAR at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in MUTABLE, expected an identifier after VAR at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        name = tokens.get(-1).getLiteral();
+    private <N> N parseMutable(Builder<N> builder) throws ParseException {
 
-        if (!match(":"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in MUTABLE, expected ':' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in MUTABLE, expected ':' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        int start = tokens.index;
+        N value = null;
+        match(Token.Kind.VAR);
 
-        if (!match(Token.Type.IDENTIFIER))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in MUTABLE, expected identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in MUTABLE, expected identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        type = tokens.get(-1).getLiteral();
+        expect(Token.Type.IDENTIFIER, "MUTABLE", "an identifier after VAR");
+        int name = tokens.symbol(-1);
+        expect(Token.Kind.COLON, "MUTABLE", "':'");
+        expect(Token.Type.IDENTIFIER, "MUTABLE", "identifier");
+        int type = tokens.symbol(-1);
 
-        if (match("="))
-            value = Optional.of(parseExpression());
+        if (match(Token.Kind.ASSIGN))
+            value = parseExpression(builder);
 
-        return new Ast.Global(name, type, true, value);
+        return builder.global(start, name, type, true, value);
     }
 
     /**
@@ -183,42 +521,22 @@ public final class Parser {
      * next token declares an immutable global variable, aka {@code VAL}.
      */
     public Ast.Global parseImmutable() throws ParseException {
+        return (Ast.Global) parseImmutable(astBuilder);
+    }
 
-        String name;
-        String type;
-        match("VAL");
-
-        if (!match(Token.Type.IDENTIFIER))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in IMMUTABLE, expected an identifier after VAL at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in IMMUTABLE, expected an identifier after VAL at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        name = tokens.get(-1).getLiteral();
-
-        if (!match(":"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in IMMUTABLE, expected ':' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in IMMUTABLE, expected ':' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+    private <N> N parseImmutable(Builder<N> builder) throws ParseException {
 
-        if (!match(Token.Type.IDENTIFIER))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in IMMUTABLE, expected identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in IMMUTABLE, expected identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        type = tokens.get(-1).getLiteral();
+        int start = tokens.index;
+        match(Token.Kind.VAL);
 
-        if (!match("="))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in IMMUTABLE, expected '=' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in IMMUTABLE, expected '=' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        expect(Token.Type.IDENTIFIER, "IMMUTABLE", "an identifier after VAL");
+        int name = tokens.symbol(-1);
+        expect(Token.Kind.COLON, "IMMUTABLE", "':'");
+        expect(Token.Type.IDENTIFIER, "IMMUTABLE", "identifier");
+        int type = tokens.symbol(-1);
+        expect(Token.Kind.ASSIGN, "IMMUTABLE", "'='");
 
-        return new Ast.Global(name, type, false, Optional.of(parseExpression()));
+        return builder.global(start, name, type, false, parseExpression(builder));
     }
 
     /**
@@ -226,114 +544,138 @@ public final class Parser {
      * next tokens start a method, aka {@code FUN}.
      */
     public Ast.Function parseFunction() throws ParseException {
+        return (Ast.Function) parseFunction(astBuilder);
+    }
+
+    private <N> N parseFunction(Builder<N> builder) throws ParseException {
+
+        int start = tokens.index;
+        int returnType = -1;
+        match(Token.Kind.FUN);
 
-        Optional<String> returnType = Optional.empty();
-        match("FUN");
+        expect(Token.Type.IDENTIFIER, "FUN", "an identifier");
+        int name = tokens.symbol(-1);
+        expect(Token.Kind.LEFT_PAREN, "FUN", "'('");
 
-        if (!match(Token.Type.IDENTIFIER))
+        int[] parameters = new int[0];
+        if (!peek(Token.Kind.RIGHT_PAREN))
         {
-            if (tokens.has(0))
-                throw new ParseException("Exception in FUN, expected an identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in FUN, expected an identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
+            String expected = "an identifier or ')'";
+            do {
+                expect(Token.Type.IDENTIFIER, "FUN", expected);
+                int parameter = tokens.symbol(-1);
+                expect(Token.Kind.COLON, "FUN", "':'");
+                expect(Token.Type.IDENTIFIER, "FUN", "identifier");
+                parameters = Arrays.copyOf(parameters, parameters.length + 3);
+                parameters[parameters.length - 3] = tokens.index - 3;
+                parameters[parameters.length - 2] = parameter;
+                parameters[parameters.length - 1] = tokens.symbol(-1);
+                expected = "an identifier";
+            } while (match(Token.Kind.COMMA));
         }
-        String name = tokens.get(-1).getLiteral();
 
-        if (!match("("))
+        expect(Token.Kind.RIGHT_PAREN, "FUN", "')'");
+
+        if (match(Token.Kind.COLON))
         {
-            if (tokens.has(0))
-                throw new ParseException("Exception in FUN, expected '(' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in FUN, expected '(' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
+            expect(Token.Type.IDENTIFIER, "FUN", "identifier");
+            returnType = tokens.symbol(-1);
         }
 
-        List<String> parameters = new ArrayList<>();
-        List<String> parameterTypes = new ArrayList<>();
-        if (!peek(")"))
+        expect(Token.Kind.DO, "FUN", "DO");
+
+        int end = lazy && tokens instanceof IndexedTokenStream ? findEnd() : -1;
+        if (end >= 0)
         {
-            if (!match(Token.Type.IDENTIFIER))
-            {
-                if (tokens.has(0))
-                    throw new ParseException("Exception in FUN, expected an identifier or ')' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                throw new ParseException("Exception in FUN, expected an identifier or ')' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-            }
-            parameters.add(tokens.get(-1).getLiteral());
+            Parser body = new Parser(((IndexedTokenStream) tokens).range(tokens.index, tokens.index + end));
+            body.ids = ids;
+            body.pool = pool;
+            tokens.index += end;
+            match(Token.Kind.END);
+            return builder.function(start, name, parameters, returnType, () -> body.parseBody(builder));
+        }
 
-            if (!match(":"))
-            {
-                if (tokens.has(0))
-                    throw new ParseException("Exception in FUN, expected ':' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                throw new ParseException("Exception in FUN, expected ':' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-            }
+        List<N> statements = parseBlock(builder);
 
-            if (!match(Token.Type.IDENTIFIER))
-            {
-                if (tokens.has(0))
-                    throw new ParseException("Exception in FUN, expected identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                throw new ParseException("Exception in FUN, expected identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-            }
-            parameterTypes.add(tokens.get(-1).getLiteral());
+        expect(Token.Kind.END, "FUN", "END");
 
-            while (match(","))
-            {
-                if (!match(Token.Type.IDENTIFIER))
-                {
-                    if (tokens.has(0))
-                        throw new ParseException("Exception in FUN, expected an identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                    throw new ParseException("Exception in FUN, expected an identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
+        return builder.function(start, name, parameters, returnType, statements);
+    }
+    /**
+     * Returns the offset of the {@code END} closing the function body which
+     * has just been opened, or -1 if the body must be parsed eagerly.
+     *
+     * Names may be spelled like keywords, so the scan only trusts its count
+     * when every {@code DO}, {@code SWITCH} and {@code END} in the body is in
+     * a position where the grammar allows nothing but the keyword, see {@link
+     * #isBlockKeyword(int)}, the body has no {@code FUN}, and the {@code END}
+     * is followed by another function or the end of the input. Otherwise the
+     * range may not be the one eager parsing finds, such as when the {@code
+     * END} of a function is taken for that of a block and the following
+     * functions are absorbed into the body, so the body is parsed eagerly to
+     * find the same end or report the same error as {@link #parseSource()}.
+     */
+    private int findEnd() {
+        int depth = 1;
+        for (int offset = 0; tokens.has(offset); offset++) {
+            Token.Kind kind = tokens.kind(offset);
+            if (kind == Token.Kind.FUN) {
+                return -1;
+            }
+            else if (kind == Token.Kind.DO || kind == Token.Kind.SWITCH || kind == Token.Kind.END) {
+                if (!isBlockKeyword(offset)) {
+                    return -1;
                 }
-                parameters.add(tokens.get(-1).getLiteral());
-
-                if (!match(":"))
-                {
-                    if (tokens.has(0))
-                        throw new ParseException("Exception in FUN, expected ':' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                    throw new ParseException("Exception in FUN, expected ':' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
+                else if (kind != Token.Kind.END) {
+                    depth++;
                 }
-
-                if (!match(Token.Type.IDENTIFIER))
-                {
-                    if (tokens.has(0))
-                        throw new ParseException("Exception in FUN, expected identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                    throw new ParseException("Exception in FUN, expected identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
+                else if (--depth == 0) {
+                    return !tokens.has(offset + 1) || tokens.kind(offset + 1) == Token.Kind.FUN ? offset : -1;
                 }
-                parameterTypes.add(tokens.get(-1).getLiteral());
             }
         }
+        return -1;
+    }
 
-        if (!match(")"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in FUN, expected ')' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in FUN, expected ')' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-
-        if (match(":"))
-        {
-            if (!match(Token.Type.IDENTIFIER))
-            {
-                if (tokens.has(0))
-                    throw new ParseException("Exception in FUN, expected identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                throw new ParseException("Exception in FUN, expected identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
+    /**
+     * Returns true if the {@code DO}, {@code SWITCH} or {@code END} at {@code
+     * offset} can only be the keyword: a {@code DO} directly after the end of
+     * a condition, or a {@code SWITCH} or {@code END} at the start of a
+     * statement. Anywhere else it may be a name.
+     */
+    private boolean isBlockKeyword(int offset) {
+        Token.Kind previous = tokens.kind(offset - 1);
+        if (tokens.kind(offset) == Token.Kind.DO) {
+            switch (tokens.type(offset - 1)) {
+                case IDENTIFIER:
+                    return previous == Token.Kind.NONE || previous == Token.Kind.NIL
+                            || previous == Token.Kind.TRUE || previous == Token.Kind.FALSE;
+                case OPERATOR:
+                    return previous == Token.Kind.RIGHT_PAREN || previous == Token.Kind.RIGHT_BRACKET;
+                default:
+                    return true;
             }
-            returnType = Optional.of(tokens.get(-1).getLiteral());
-        }
-
-        if (!match("DO"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in FUN, expected DO at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in FUN, expected DO at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
         }
+        return previous == Token.Kind.SEMICOLON || previous == Token.Kind.DO || previous == Token.Kind.END
+                || previous == Token.Kind.ELSE || previous == Token.Kind.DEFAULT;
+    }
 
-        List<Ast.Statement> statements = parseBlock();
-
-        if (!match("END"))
-        {
+    /**
+     * Parses a deferred function body, which must span the entire range up to
+     * the function's {@code END}. The parser is reset on failure so the body
+     * can be parsed again. The nodes are created by the builder of the parser
+     * the function was found by.
+     */
+    private <N> List<N> parseBody(Builder<N> builder) {
+        int start = tokens.index;
+        try {
+            List<N> statements = parseBlock(builder);
             if (tokens.has(0))
-                throw new ParseException("Exception in FUN, expected END at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in FUN, expected END at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
+                throw error("FUN", "END");
+            return statements;
+        } finally {
+            tokens.index = start;
         }
-
-        return new Ast.Function(name, parameters, parameterTypes, returnType, statements);
     }
 
     /**
@@ -341,11 +683,15 @@ public final class Parser {
      * preceding token indicates the opening a block.
      */
     public List<Ast.Statement> parseBlock() throws ParseException {
+        return cast(parseBlock(astBuilder));
+    }
 
-        List<Ast.Statement> statements = new ArrayList<>();
+    private <N> List<N> parseBlock(Builder<N> builder) throws ParseException {
 
-        while((!(peek("END") || peek("DEFAULT") || peek("ELSE") || peek("CASE"))) && tokens.has(0))
-            statements.add(parseStatement());
+        List<N> statements = new ArrayList<>();
+
+        while((!(peek(Token.Kind.END) || peek(Token.Kind.DEFAULT) || peek(Token.Kind.ELSE) || peek(Token.Kind.CASE))) && tokens.has(0))
+            statements.add(parseStatement(builder));
 
         return statements;
     }
@@ -356,44 +702,37 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
+        return (Ast.Statement) parseStatement(astBuilder);
+    }
 
-        Ast.Statement result;
-        if (peek("LET"))
-        {
-            result = parseDeclarationStatement();
-        }
-        else if (peek("SWITCH"))
-        {
-            result = parseSwitchStatement();
-        }
-        else if (peek("IF"))
-        {
-            result = parseIfStatement();
-        }
-        else if (peek("WHILE"))
-        {
-            result = parseWhileStatement();
-        }
-        else if (peek("RETURN"))
+    private <N> N parseStatement(Builder<N> builder) throws ParseException {
+
+        switch (tokens.has(0) ? tokens.kind(0) : Token.Kind.NONE)
         {
-            result = parseReturnStatement();
+            case LET:
+                return parseDeclarationStatement(builder);
+            case SWITCH:
+                return parseSwitchStatement(builder);
+            case IF:
+                return parseIfStatement(builder);
+            case WHILE:
+                return parseWhileStatement(builder);
+            case RETURN:
+                return parseReturnStatement(builder);
+            default:
+                break;
         }
-        else
-        {
-            Ast.Expression lhs = parseExpression();
 
-            if (match("="))
-                result = new Ast.Statement.Assignment(lhs, parseExpression());
-            else
-                result = new Ast.Statement.Expression(lhs);
+        int start = tokens.index;
+        N result;
+        N lhs = parseExpression(builder);
 
-            if (!match(";"))
-            {
-                if (tokens.has(0))
-                    throw new ParseException("Exception in STATEMENT, expected ';' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                throw new ParseException("Exception in STATEMENT, expected ';' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-            }
-        }
+        if (match(Token.Kind.ASSIGN))
+            result = builder.assignment(start, lhs, parseExpression(builder));
+        else
+            result = builder.expression(start, lhs);
+
+        expect(Token.Kind.SEMICOLON, "STATEMENT", "';'");
 
         return result;
     }
@@ -404,41 +743,31 @@ public final class Parser {
      * statement, aka {@code LET}.
      */
     public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
+        return (Ast.Statement.Declaration) parseDeclarationStatement(astBuilder);
+    }
 
-        Optional<String> type = Optional.empty();
-        Optional<Ast.Expression> value = Optional.empty();
-        match("LET");
+    private <N> N parseDeclarationStatement(Builder<N> builder) throws ParseException {
 
-        if (!match(Token.Type.IDENTIFIER))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in LET, expected an identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in LET, expected an identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        String name = tokens.get(-1).getLiteral();
+        int start = tokens.index;
+        int type = -1;
+        N value = null;
+        match(Token.Kind.LET);
 
-        if (match(":"))
+        expect(Token.Type.IDENTIFIER, "LET", "an identifier");
+        int name = tokens.symbol(-1);
+
+        if (match(Token.Kind.COLON))
         {
-            if (!match(Token.Type.IDENTIFIER))
-            {
-                if (tokens.has(0))
-                    throw new ParseException("Exception in FUN, expected identifier at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                throw new ParseException("Exception in FUN, expected identifier at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-            }
-            type = Optional.of(tokens.get(-1).getLiteral());
+            expect(Token.Type.IDENTIFIER, "FUN", "identifier");
+            type = tokens.symbol(-1);
         }
 
-        if (match("="))
-            value = Optional.of(parseExpression());
+        if (match(Token.Kind.ASSIGN))
+            value = parseExpression(builder);
 
-        if (!match(";"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in LET, expected ';' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in LET, expected ';' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        expect(Token.Kind.SEMICOLON, "LET", "';'");
 
-        return new Ast.Statement.Declaration(name, type, value);
+        return builder.declaration(start, name, type, value);
     }
 
     /**
@@ -447,32 +776,27 @@ public final class Parser {
      * {@code IF}.
      */
     public Ast.Statement.If parseIfStatement() throws ParseException {
+        return (Ast.Statement.If) parseIfStatement(astBuilder);
+    }
 
-        match("IF");
+    private <N> N parseIfStatement(Builder<N> builder) throws ParseException {
 
-        Ast.Expression condition = parseExpression();
+        int start = tokens.index;
+        match(Token.Kind.IF);
 
-        if (!match("DO"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in IF, expected DO at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in IF, expected DO at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        N condition = parseExpression(builder);
 
-        List<Ast.Statement> then = parseBlock();
+        expect(Token.Kind.DO, "IF", "DO");
 
-        List<Ast.Statement> otherwise = new ArrayList<>();
-        if (match("ELSE"))
-            otherwise = parseBlock();
+        List<N> then = parseBlock(builder);
 
-        if (!match("END"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in IF, expected END at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in IF, expected END at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        List<N> otherwise = new ArrayList<>();
+        if (match(Token.Kind.ELSE))
+            otherwise = parseBlock(builder);
+
+        expect(Token.Kind.END, "IF", "END");
 
-        return new Ast.Statement.If(condition, then, otherwise);
+        return builder.ifStatement(start, condition, then, otherwise);
     }
 
     /**
@@ -481,31 +805,27 @@ public final class Parser {
      * {@code SWITCH}.
      */
     public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
+        return (Ast.Statement.Switch) parseSwitchStatement(astBuilder);
+    }
 
-        match("SWITCH");
+    private <N> N parseSwitchStatement(Builder<N> builder) throws ParseException {
 
-        Ast.Expression condition = parseExpression();
+        int start = tokens.index;
+        match(Token.Kind.SWITCH);
 
-        List<Ast.Statement.Case> cases = new ArrayList<>();
-        while (peek("CASE"))
-            cases.add(parseCaseStatement());
+        N condition = parseExpression(builder);
 
-        if (!peek("DEFAULT"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in SWITCH, expected DEFAULT at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in SWITCH, expected DEFAULT at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        cases.add(parseCaseStatement());
+        List<N> cases = new ArrayList<>();
+        while (peek(Token.Kind.CASE))
+            cases.add(parseCaseStatement(builder));
 
-        if (!match("END"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in SWITCH, expected END at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in SWITCH, expected END at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        if (!peek(Token.Kind.DEFAULT))
+            throw error("SWITCH", "DEFAULT");
+        cases.add(parseCaseStatement(builder));
 
-        return new Ast.Statement.Switch(condition, cases);
+        expect(Token.Kind.END, "SWITCH", "END");
+
+        return builder.switchStatement(start, condition, cases);
     }
 
     /**
@@ -514,30 +834,26 @@ public final class Parser {
      * default block of a switch statement, aka {@code CASE} or {@code DEFAULT}.
      */
     public Ast.Statement.Case parseCaseStatement() throws ParseException {
+        return (Ast.Statement.Case) parseCaseStatement(astBuilder);
+    }
 
-        Optional<Ast.Expression> value = Optional.empty();
-        List<Ast.Statement> statements;
+    private <N> N parseCaseStatement(Builder<N> builder) throws ParseException {
 
-        if (match("CASE"))
-        {
-            value = Optional.of(parseExpression());
+        int start = tokens.index;
+        N value = null;
 
-            if (!match(":"))
-            {
-                if (tokens.has(0))
-                    throw new ParseException("Exception in CASE, expected ':' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                throw new ParseException("Exception in CASE, expected ':' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-            }
+        if (match(Token.Kind.CASE))
+        {
+            value = parseExpression(builder);
+            expect(Token.Kind.COLON, "CASE", "':'");
         }
 
         else
         {
-            match("DEFAULT");
+            match(Token.Kind.DEFAULT);
         }
 
-        statements = parseBlock();
-
-        return new Ast.Statement.Case(value, statements);
+        return builder.caseStatement(start, value, parseBlock(builder));
     }
 
     /**
@@ -546,27 +862,21 @@ public final class Parser {
      * {@code WHILE}.
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
+        return (Ast.Statement.While) parseWhileStatement(astBuilder);
+    }
 
-        match("WHILE");
+    private <N> N parseWhileStatement(Builder<N> builder) throws ParseException {
 
-        Ast.Expression condition = parseExpression();
+        int start = tokens.index;
+        match(Token.Kind.WHILE);
 
-        if (!match("DO"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in WHILE, expected DO at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in WHILE, expected DO at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
-        List<Ast.Statement> statements = parseBlock();
+        N condition = parseExpression(builder);
 
-        if (!match("END"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in WHILE, expected END at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in WHILE, expected END at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        expect(Token.Kind.DO, "WHILE", "DO");
+        List<N> statements = parseBlock(builder);
+        expect(Token.Kind.END, "WHILE", "END");
 
-        return new Ast.Statement.While(condition, statements);
+        return builder.whileStatement(start, condition, statements);
     }
 
     /**
@@ -575,115 +885,81 @@ public final class Parser {
      * {@code RETURN}.
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
+        return (Ast.Statement.Return) parseReturnStatement(astBuilder);
+    }
 
-        match("RETURN");
+    private <N> N parseReturnStatement(Builder<N> builder) throws ParseException {
 
-        Ast.Expression value = parseExpression();
+        int start = tokens.index;
+        match(Token.Kind.RETURN);
 
-        if (!match(";"))
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in RETURN, expected ';' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in RETURN, expected ';' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        N value = parseExpression(builder);
+
+        expect(Token.Kind.SEMICOLON, "RETURN", "';'");
 
-        return new Ast.Statement.Return(value);
+        return builder.returnStatement(start, value);
     }
 
     /**
      * Parses the {@code expression} rule.
      */
     public Ast.Expression parseExpression() throws ParseException {
-        return parseLogicalExpression();
+        return (Ast.Expression) parseBinaryExpression(astBuilder, LOGICAL);
+    }
+
+    private <N> N parseExpression(Builder<N> builder) throws ParseException {
+        return parseBinaryExpression(builder, LOGICAL);
     }
 
     /**
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expression parseLogicalExpression() throws ParseException {
-
-        Ast.Expression result = parseComparisonExpression();
-        while(peek("&&") || peek("||"))
-        {
-            String operator = "||";
-            if (match("&&"))
-                operator = "&&";
-            else
-                match("||");
-
-            Ast.Expression rhs = parseComparisonExpression();
-            result = new Ast.Expression.Binary(operator, result, rhs);
-        }
-
-        return result;
+        return (Ast.Expression) parseBinaryExpression(astBuilder, LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseComparisonExpression() throws ParseException {
-
-        Ast.Expression result = parseAdditiveExpression();
-        while(peek("<") || peek(">") || peek("==") || peek("!="))
-        {
-            String operator = "!=";
-            if (match("<"))
-                operator = "<";
-            else if (match(">"))
-                operator = ">";
-            else if (match("=="))
-                operator = "==";
-            else
-                match("!=");
-
-            Ast.Expression rhs = parseAdditiveExpression();
-            result = new Ast.Expression.Binary(operator, result, rhs);
-        }
-
-        return result;
+        return (Ast.Expression) parseBinaryExpression(astBuilder, COMPARISON);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression() throws ParseException {
-
-        Ast.Expression result = parseMultiplicativeExpression();
-        while(peek("+") || peek("-"))
-        {
-            String operator = "-";
-            if (match("+"))
-                operator = "+";
-            else
-                match("-");
-
-            Ast.Expression rhs = parseMultiplicativeExpression();
-            result = new Ast.Expression.Binary(operator, result, rhs);
-        }
-
-        return result;
+        return (Ast.Expression) parseBinaryExpression(astBuilder, ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
+        return (Ast.Expression) parseBinaryExpression(astBuilder, MULTIPLICATIVE);
+    }
 
-        Ast.Expression result = parsePrimaryExpression();
-        while(peek("*") || peek("/") || peek("^"))
-        {
-            String operator = "^";
-            if (match("*"))
-                operator = "*";
-            else if (match("/"))
-                operator = "/";
-            else
-                match("^");
-
-            Ast.Expression rhs = parsePrimaryExpression();
-            result = new Ast.Expression.Binary(operator, result, rhs);
+    /**
+     * Parses binary operators binding at least as tightly as {@code
+     * precedence} by precedence climbing, which replaces one method per
+     * grammar level with a single loop. The precedence of the next operator
+     * is read from {@link #PRECEDENCE} by its kind, and operators of the same
+     * level are folded into the left operand so the tree is left-associative,
+     * as with the grammar's {@code (op rhs)*} repetition.
+     */
+    private <N> N parseBinaryExpression(Builder<N> builder, int precedence) throws ParseException {
+        int start = tokens.index;
+        N result = parsePrimaryExpression(builder);
+        while (tokens.has(0)) {
+            Token.Kind operator = tokens.kind(0);
+            int level = PRECEDENCE[operator.ordinal()];
+            if (level < precedence) {
+                break;
+            }
+            tokens.advance();
+            N rhs = parseBinaryExpression(builder, level + 1);
+            result = builder.binary(start, operator, result, rhs);
         }
-
         return result;
     }
 
@@ -694,174 +970,104 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException {
+        return (Ast.Expression) parsePrimaryExpression(astBuilder);
+    }
 
-        Ast.Expression result = null;
+    private <N> N parsePrimaryExpression(Builder<N> builder) throws ParseException {
 
-        if (match("NIL"))
-        {
-            result = new Ast.Expression.Literal(null);
-        }
+        int start = tokens.index;
 
-        else if (match("TRUE"))
+        if (match(Token.Kind.NIL))
         {
-            result = new Ast.Expression.Literal(Boolean.TRUE);
+            return builder.literal(start, null);
         }
 
-        else if (match("FALSE"))
+        else if (match(Token.Kind.TRUE))
         {
-            result = new Ast.Expression.Literal(Boolean.FALSE);
+            return builder.literal(start, Boolean.TRUE);
         }
 
-        else if (match(Token.Type.INTEGER))
+        else if (match(Token.Kind.FALSE))
         {
-            result = new Ast.Expression.Literal(new BigInteger(tokens.get(-1).getLiteral()));
+            return builder.literal(start, Boolean.FALSE);
         }
 
-        else if (match(Token.Type.DECIMAL))
+        else if (match(Token.Type.INTEGER) || match(Token.Type.DECIMAL) || match(Token.Type.CHARACTER) || match(Token.Type.STRING))
         {
-            result = new Ast.Expression.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
+            return builder.literal(start, tokens.value(-1));
         }
 
-        else if (match(Token.Type.CHARACTER))
-        {
-            String literalChar = tokens.get(-1).getLiteral();
-            String newLitChar = literalChar.substring(1, literalChar.length() - 1);
-
-            if (newLitChar.contains("\\b"))
-                newLitChar = newLitChar.replace("\\b", "\b");
-            else if (newLitChar.contains("\\n"))
-                newLitChar = newLitChar.replace("\\n", "\n");
-            else if (newLitChar.contains("\\r"))
-                newLitChar = newLitChar.replace("\\r", "\r");
-            else if (newLitChar.contains("\\t"))
-                newLitChar = newLitChar.replace("\\t", "\t");
-            else if (newLitChar.contains("\\'"))
-                newLitChar = newLitChar.replace("\\'", "'");
-            else if (newLitChar.contains("\\\""))
-                newLitChar = newLitChar.replace("\\\"", "\"");
-            else if (newLitChar.contains("\\\\"))
-                newLitChar = newLitChar.replace("\\\\", "\\");
-
-            result = new Ast.Expression.Literal(newLitChar.charAt(0));
-        }
-
-        else if (match(Token.Type.STRING))
-        {
-            String literalString = tokens.get(-1).getLiteral();
-            String newLitString = literalString.substring(1, literalString.length() - 1);
-
-            if (newLitString.contains("\\b"))
-                newLitString = newLitString.replace("\\b", "\b");
-            else if (newLitString.contains("\\n"))
-                newLitString = newLitString.replace("\\n", "\n");
-            else if (newLitString.contains("\\r"))
-                newLitString = newLitString.replace("\\r", "\r");
-            else if (newLitString.contains("\\t"))
-                newLitString = newLitString.replace("\\t", "\t");
-            else if (newLitString.contains("\\'"))
-                newLitString = newLitString.replace("\\'", "'");
-            else if (newLitString.contains("\\\""))
-                newLitString = newLitString.replace("\\\"", "\"");
-            else if (newLitString.contains("\\\\"))
-                newLitString = newLitString.replace("\\\\", "\\");
-
-            result = new Ast.Expression.Literal(newLitString);
-        }
-
-        else if (match("("))
+        else if (match(Token.Kind.LEFT_PAREN))
         {
-            result = new Ast.Expression.Group(parseExpression());
-
-            if (!match(")"))
-            {
-                if (tokens.has(0))
-                    throw new ParseException("Exception in PRIMARY_EXPRESSION grouping, expected ')' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                throw new ParseException("Exception in PRIMARY_EXPRESSION grouping, expected ')' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-            }
+            N expression = parseExpression(builder);
+            expect(Token.Kind.RIGHT_PAREN, "PRIMARY_EXPRESSION grouping", "')'");
+            return builder.group(start, expression);
         }
 
         else if (match(Token.Type.IDENTIFIER))
         {
-            String identifierName = tokens.get(-1).getLiteral();
+            int name = tokens.symbol(-1);
 
-            if (match("("))
+            if (match(Token.Kind.LEFT_PAREN))
             {
-                List<Ast.Expression> parameters = new ArrayList<>();
+                List<N> arguments = new ArrayList<>();
 
-                if (!peek(")"))
+                if (!peek(Token.Kind.RIGHT_PAREN))
                 {
-                    Ast.Expression firstExpression = parseExpression();
-                    parameters.add(firstExpression);
+                    arguments.add(parseExpression(builder));
 
-                    while (match(","))
-                        parameters.add(parseExpression());
+                    while (match(Token.Kind.COMMA))
+                        arguments.add(parseExpression(builder));
                 }
 
-                if (!match(")"))
-                {
-                    if (tokens.has(0))
-                        throw new ParseException("Exception in PRIMARY_EXPRESSION function call, expected ')' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                    throw new ParseException("Exception in PRIMARY_EXPRESSION function call, expected ')' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-                }
+                expect(Token.Kind.RIGHT_PAREN, "PRIMARY_EXPRESSION function call", "')'");
 
-                result = new Ast.Expression.Function(identifierName, parameters);
+                return builder.call(start, name, arguments);
             }
 
-            else if (match("["))
+            else if (match(Token.Kind.LEFT_BRACKET))
             {
-                Ast.Expression expression = parseExpression();
-
-                if (!match("]"))
-                {
-                    if (tokens.has(0))
-                        throw new ParseException("Exception in PRIMARY_EXPRESSION list access, expected ']' at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-                    throw new ParseException("Exception in PRIMARY_EXPRESSION list access, expected ']' at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-                }
-
-                result = new Ast.Expression.Access(Optional.of(expression), identifierName);
+                N offset = parseExpression(builder);
+                expect(Token.Kind.RIGHT_BRACKET, "PRIMARY_EXPRESSION list access", "']'");
+                return builder.access(start, name, offset);
             }
 
-            else
-            {
-                result = new Ast.Expression.Access(Optional.empty(), identifierName);
-            }
+            return builder.access(start, name, null);
         }
 
-        if (result != null)
-        {
-            return result;
-        }
-
-        else
-        {
-            if (tokens.has(0))
-                throw new ParseException("Exception in parseExpression, invalid expression at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-            throw new ParseException("Exception in parseExpression, invalid expression at index " + (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
-        }
+        int index = errorIndex();
+        throw new ParseException("Exception in parseExpression, invalid expression at index " + index, index);
     }
-
     /**
      * As in the lexer, returns {@code true} if the current sequence of tokens
      * matches the given patterns. Unlike the lexer, the pattern is not a regex;
      * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
-     * literal is the same.
+     * type is the same, a {@link Token.Kind}, which matches if the token is
+     * that keyword or operator, or a {@link String}, which matches if the
+     * token's literal is the same.
      *
-     * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
-     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     * In other words, {@code Token(IDENTIFIER, "LET")} is matched by {@code
+     * peek(Token.Type.IDENTIFIER)}, {@code peek(Token.Kind.LET)} and {@code
+     * peek("LET")}. Kinds are classified by the lexer, so they are compared by
+     * identity rather than by literal.
      */
     private boolean peek(Object... patterns) {
         for (int i = 0; i < patterns.length; i++) {
             if (!tokens.has(i)) {
                 return false;
             }
+            else if (patterns[i] instanceof Token.Kind) {
+                if (patterns[i] != tokens.kind(i)) {
+                    return false;
+                }
+            }
             else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
+                if (patterns[i] != tokens.type(i)) {
                     return false;
                 }
             }
             else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
+                if (!tokens.literalEquals(i, (String) patterns[i])) {
                     return false;
                 }
             }
@@ -886,27 +1092,420 @@ public final class Parser {
         return peek;
     }
 
-    private static final class TokenStream {
+    /**
+     * Creates the nodes of each production, so that the grammar is written
+     * once and builds either {@link Ast} objects, with {@link AstBuilder}, or
+     * a {@link FlatAst}, with {@link FlatBuilder}. A node is created once its
+     * children have been parsed, which are passed in source order, with
+     * {@code null} for an absent optional child. Names and types are symbol
+     * ids, or -1 if absent, and {@code token} is the index of the node's first
+     * token.
+     */
+    private interface Builder<N> {
 
-        private final List<Token> tokens;
-        private int index = 0;
+        N source(int token, List<N> globals, List<N> functions);
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
+        N global(int token, int name, int type, boolean mutable, N value);
+
+        /**
+         * Creates a function, where {@code parameters} holds the token, name
+         * and type of each parameter in turn.
+         */
+        N function(int token, int name, int[] parameters, int returnType, List<N> statements);
+
+        /**
+         * Creates a function whose body was skipped, see {@link
+         * #setLazy(boolean)}. Its statements are parsed by calling {@code
+         * body}, which the builder may do at once or when they are needed.
+         */
+        N function(int token, int name, int[] parameters, int returnType, Supplier<List<N>> body);
+
+        N expression(int token, N expression);
+
+        N declaration(int token, int name, int type, N value);
+
+        N assignment(int token, N receiver, N value);
+
+        N ifStatement(int token, N condition, List<N> thenStatements, List<N> elseStatements);
+
+        N switchStatement(int token, N condition, List<N> cases);
+
+        N caseStatement(int token, N value, List<N> statements);
+
+        N whileStatement(int token, N condition, List<N> statements);
+
+        N returnStatement(int token, N value);
+
+        N literal(int token, Object literal);
+
+        N group(int token, N expression);
+
+        N binary(int token, Token.Kind operator, N left, N right);
+
+        N access(int token, int name, N offset);
+
+        N call(int token, int name, List<N> arguments);
+
+        N list(int token, List<N> values);
+
+    }
+
+    /**
+     * Builds {@link Ast} objects, numbering them with {@link #node(Ast)} and
+     * sharing constant expressions through the {@link AstPool}, if any.
+     * Deferred bodies are submitted to the fork pool if one is given, for
+     * {@link #parseSourceParallel(ForkJoinPool)}.
+     */
+    private final class AstBuilder implements Builder<Ast> {
+
+        private final ForkJoinPool fork;
+        private final List<ForkJoinTask<List<Ast>>> forked = new ArrayList<>();
+
+        private AstBuilder(ForkJoinPool fork) {
+            this.fork = fork;
+        }
+
+        private String name(int symbol) {
+            return symbol >= 0 ? tokens.symbols.getName(symbol) : null;
+        }
+
+        private Optional<Ast.Expression> optional(Ast value) {
+            return Optional.ofNullable((Ast.Expression) value);
+        }
+
+        @Override
+        public Ast source(int token, List<Ast> globals, List<Ast> functions) {
+            return node(new Ast.Source(cast(globals), cast(functions)));
+        }
+
+        @Override
+        public Ast global(int token, int name, int type, boolean mutable, Ast value) {
+            return node(new Ast.Global(name(name), name(type), mutable, optional(value)));
+        }
+
+        @Override
+        public Ast function(int token, int name, int[] parameters, int returnType, List<Ast> statements) {
+            return node(new Ast.Function(name(name), parameterNames(parameters, 1), parameterNames(parameters, 2), Optional.ofNullable(name(returnType)), cast(statements)));
+        }
+
+        @Override
+        public Ast function(int token, int name, int[] parameters, int returnType, Supplier<List<Ast>> body) {
+            Supplier<List<Ast>> statements = fork != null ? fork(body) : body;
+            return node(new Ast.Function(name(name), parameterNames(parameters, 1), parameterNames(parameters, 2), Optional.ofNullable(name(returnType)), () -> cast(statements.get())));
         }
 
         /**
-         * Returns true if there is a token at index + offset.
+         * Starts parsing a deferred body in the fork pool, returning the
+         * supplier which waits for it.
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
+        private Supplier<List<Ast>> fork(Supplier<List<Ast>> body) {
+            ForkJoinTask<List<Ast>> task = fork.submit(body::get);
+            forked.add(task);
+            return task::join;
+        }
+
+        private List<String> parameterNames(int[] parameters, int field) {
+            List<String> names = new ArrayList<>(parameters.length / 3);
+            for (int i = field; i < parameters.length; i += 3) {
+                names.add(name(parameters[i]));
+            }
+            return names;
+        }
+
+        @Override
+        public Ast expression(int token, Ast expression) {
+            return node(new Ast.Statement.Expression((Ast.Expression) expression));
+        }
+
+        @Override
+        public Ast declaration(int token, int name, int type, Ast value) {
+            return node(new Ast.Statement.Declaration(name(name), Optional.ofNullable(name(type)), optional(value)));
+        }
+
+        @Override
+        public Ast assignment(int token, Ast receiver, Ast value) {
+            return node(new Ast.Statement.Assignment((Ast.Expression) receiver, (Ast.Expression) value));
+        }
+
+        @Override
+        public Ast ifStatement(int token, Ast condition, List<Ast> thenStatements, List<Ast> elseStatements) {
+            return node(new Ast.Statement.If((Ast.Expression) condition, cast(thenStatements), cast(elseStatements)));
+        }
+
+        @Override
+        public Ast switchStatement(int token, Ast condition, List<Ast> cases) {
+            return node(new Ast.Statement.Switch((Ast.Expression) condition, cast(cases)));
+        }
+
+        @Override
+        public Ast caseStatement(int token, Ast value, List<Ast> statements) {
+            return node(new Ast.Statement.Case(optional(value), cast(statements)));
+        }
+
+        @Override
+        public Ast whileStatement(int token, Ast condition, List<Ast> statements) {
+            return node(new Ast.Statement.While((Ast.Expression) condition, cast(statements)));
+        }
+
+        @Override
+        public Ast returnStatement(int token, Ast value) {
+            return node(new Ast.Statement.Return((Ast.Expression) value));
+        }
+
+        @Override
+        public Ast literal(int token, Object literal) {
+            return pool != null ? pool.literal(literal) : node(new Ast.Expression.Literal(literal));
+        }
+
+        @Override
+        public Ast group(int token, Ast expression) {
+            Ast.Expression shared = pool != null ? pool.group((Ast.Expression) expression) : null;
+            return shared != null ? shared : node(new Ast.Expression.Group((Ast.Expression) expression));
+        }
+
+        @Override
+        public Ast binary(int token, Token.Kind operator, Ast left, Ast right) {
+            Ast.Expression shared = pool != null ? pool.binary(operator.getLiteral(), (Ast.Expression) left, (Ast.Expression) right) : null;
+            return shared != null ? shared : node(new Ast.Expression.Binary(operator.getLiteral(), (Ast.Expression) left, (Ast.Expression) right));
+        }
+
+        @Override
+        public Ast access(int token, int name, Ast offset) {
+            return node(new Ast.Expression.Access(optional(offset), name(name)));
+        }
+
+        @Override
+        public Ast call(int token, int name, List<Ast> arguments) {
+            return node(new Ast.Expression.Function(name(name), cast(arguments)));
+        }
+
+        @Override
+        public Ast list(int token, List<Ast> values) {
+            return node(new Ast.Expression.PlcList(cast(values)));
+        }
+
+    }
+
+    /**
+     * Adds nodes to a {@link FlatAst}, linking each to its children. Lists of
+     * statements are added as a {@link FlatAst.Kind#BLOCK} with the token of
+     * the node they belong to.
+     */
+    private static final class FlatBuilder implements Builder<Integer> {
+
+        private final FlatAst ast;
+
+        private FlatBuilder(FlatAst ast) {
+            this.ast = ast;
+        }
+
+        private int add(FlatAst.Kind kind, int token, int value, Integer... children) {
+            int node = ast.add(kind, token, value);
+            for (Integer child : children) {
+                if (child != null) {
+                    ast.append(node, child);
+                }
+            }
+            return node;
+        }
+
+        private int add(FlatAst.Kind kind, int token, int value, List<Integer> children) {
+            int node = ast.add(kind, token, value);
+            for (int child : children) {
+                ast.append(node, child);
+            }
+            return node;
+        }
+
+        private int block(int token, List<Integer> statements) {
+            return add(FlatAst.Kind.BLOCK, token, -1, statements);
+        }
+
+        @Override
+        public Integer source(int token, List<Integer> globals, List<Integer> functions) {
+            int source = add(FlatAst.Kind.SOURCE, token, -1, globals);
+            for (int function : functions) {
+                ast.append(source, function);
+            }
+            return source;
+        }
+
+        @Override
+        public Integer global(int token, int name, int type, boolean mutable, Integer value) {
+            int global = add(FlatAst.Kind.GLOBAL, token, name, value);
+            ast.setType(global, type);
+            ast.setMutable(global, mutable);
+            return global;
+        }
+
+        @Override
+        public Integer function(int token, int name, int[] parameters, int returnType, List<Integer> statements) {
+            int function = ast.add(FlatAst.Kind.FUNCTION, token, name);
+            ast.setType(function, returnType);
+            for (int i = 0; i < parameters.length; i += 3) {
+                int parameter = ast.add(FlatAst.Kind.PARAMETER, parameters[i], parameters[i + 1]);
+                ast.setType(parameter, parameters[i + 2]);
+                ast.append(function, parameter);
+            }
+            ast.append(function, block(token, statements));
+            return function;
+        }
+
+        @Override
+        public Integer function(int token, int name, int[] parameters, int returnType, Supplier<List<Integer>> body) {
+            return function(token, name, parameters, returnType, body.get());
+        }
+
+        @Override
+        public Integer expression(int token, Integer expression) {
+            return add(FlatAst.Kind.EXPRESSION, token, -1, expression);
+        }
+
+        @Override
+        public Integer declaration(int token, int name, int type, Integer value) {
+            int declaration = add(FlatAst.Kind.DECLARATION, token, name, value);
+            ast.setType(declaration, type);
+            return declaration;
+        }
+
+        @Override
+        public Integer assignment(int token, Integer receiver, Integer value) {
+            return add(FlatAst.Kind.ASSIGNMENT, token, -1, receiver, value);
+        }
+
+        @Override
+        public Integer ifStatement(int token, Integer condition, List<Integer> thenStatements, List<Integer> elseStatements) {
+            return add(FlatAst.Kind.IF, token, -1, condition, block(token, thenStatements), block(token, elseStatements));
+        }
+
+        @Override
+        public Integer switchStatement(int token, Integer condition, List<Integer> cases) {
+            int statement = add(FlatAst.Kind.SWITCH, token, -1, condition);
+            for (int child : cases) {
+                ast.append(statement, child);
+            }
+            return statement;
+        }
+
+        @Override
+        public Integer caseStatement(int token, Integer value, List<Integer> statements) {
+            return add(FlatAst.Kind.CASE, token, -1, value, block(token, statements));
+        }
+
+        @Override
+        public Integer whileStatement(int token, Integer condition, List<Integer> statements) {
+            return add(FlatAst.Kind.WHILE, token, -1, condition, block(token, statements));
+        }
+
+        @Override
+        public Integer returnStatement(int token, Integer value) {
+            return add(FlatAst.Kind.RETURN, token, -1, value);
+        }
+
+        @Override
+        public Integer literal(int token, Object literal) {
+            return ast.addLiteral(token, literal);
+        }
+
+        @Override
+        public Integer group(int token, Integer expression) {
+            return add(FlatAst.Kind.GROUP, token, -1, expression);
+        }
+
+        @Override
+        public Integer binary(int token, Token.Kind operator, Integer left, Integer right) {
+            return add(FlatAst.Kind.BINARY, token, operator.ordinal(), left, right);
+        }
+
+        @Override
+        public Integer access(int token, int name, Integer offset) {
+            return add(FlatAst.Kind.ACCESS, token, name, offset);
+        }
+
+        @Override
+        public Integer call(int token, int name, List<Integer> arguments) {
+            return add(FlatAst.Kind.CALL, token, name, arguments);
+        }
+
+        @Override
+        public Integer list(int token, List<Integer> values) {
+            return add(FlatAst.Kind.LIST, token, -1, values);
+        }
+
+    }
+
+    private static abstract class TokenStream {
+
+        protected final SymbolTable symbols;
+        protected int index = 0;
+
+        protected TokenStream(SymbolTable symbols) {
+            this.symbols = symbols;
         }
 
+        /**
+         * Returns true if there is a token at index + offset.
+         */
+        public abstract boolean has(int offset);
+
         /**
          * Gets the token at index + offset.
          */
-        public Token get(int offset) {
-            return tokens.get(index + offset);
+        public abstract Token get(int offset);
+
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public Token.Type type(int offset) {
+            return get(offset).getType();
+        }
+
+        /**
+         * Gets the keyword or operator kind of the token at index + offset.
+         */
+        public Token.Kind kind(int offset) {
+            return get(offset).getKind();
+        }
+
+        /**
+         * Gets the literal of the token at index + offset.
+         */
+        public String literal(int offset) {
+            return get(offset).getLiteral();
+        }
+
+        /**
+         * Gets the decoded value of the literal token at index + offset, see
+         * {@link Token#getValue()}.
+         */
+        public Object value(int offset) {
+            return get(offset).getValue();
+        }
+
+        /**
+         * Gets the literal of the identifier at index + offset as interned in
+         * the symbol table, so that each name in the AST is a single string.
+         */
+        public String name(int offset) {
+            Token token = get(offset);
+            return symbols.getName(token.getSymbol() >= 0 ? token.getSymbol() : symbols.intern(token.getLiteral()));
+        }
+
+        /**
+         * Gets the symbol id of the identifier at index + offset, interning it
+         * as in {@link #name(int)}.
+         */
+        public int symbol(int offset) {
+            Token token = get(offset);
+            return token.getSymbol() >= 0 ? token.getSymbol() : symbols.intern(token.getLiteral());
+        }
+
+        /**
+         * Returns true if the literal of the token at index + offset is the
+         * given literal.
+         */
+        public boolean literalEquals(int offset, String literal) {
+            return literal.equals(get(offset).getLiteral());
         }
 
         /**
@@ -917,4 +1516,198 @@ public final class Parser {
         }
 
     }
+
+    /**
+     * A stream whose tokens can be read at any offset, which allows ranges of
+     * it to be parsed separately, such as by {@link
+     * #parseSourceParallel(ForkJoinPool)} and deferred function bodies.
+     */
+    private static abstract class IndexedTokenStream extends TokenStream {
+
+        protected IndexedTokenStream(SymbolTable symbols) {
+            super(symbols);
+        }
+
+        /**
+         * Returns a stream over the same tokens positioned at {@code start}
+         * which ends before {@code end}. Tokens before {@code start} remain
+         * readable so that errors at the start can refer to the previous token.
+         */
+        public abstract IndexedTokenStream range(int start, int end);
+
+    }
+
+    private static final class ListTokenStream extends IndexedTokenStream {
+
+        private final List<Token> tokens;
+        private final boolean interned;
+
+        private ListTokenStream(List<Token> tokens, SymbolTable symbols, boolean interned) {
+            super(symbols);
+            this.tokens = tokens;
+            this.interned = interned;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < tokens.size();
+        }
+
+        @Override
+        public Token get(int offset) {
+            return tokens.get(index + offset);
+        }
+
+        @Override
+        public String name(int offset) {
+            return interned ? super.name(offset) : symbols.getName(symbols.intern(literal(offset)));
+        }
+
+        @Override
+        public int symbol(int offset) {
+            return interned ? super.symbol(offset) : symbols.intern(literal(offset));
+        }
+
+        @Override
+        public IndexedTokenStream range(int start, int end) {
+            ListTokenStream range = new ListTokenStream(tokens.subList(0, end), symbols, interned);
+            range.index = start;
+            return range;
+        }
+
+    }
+
+    /**
+     * Reads tokens from a {@link TokenBuffer}, comparing literals in place so
+     * that {@link #peek(Object...)} does not allocate.
+     */
+    private static final class BufferTokenStream extends IndexedTokenStream {
+
+        private final TokenBuffer tokens;
+        private final int end;
+
+        private BufferTokenStream(TokenBuffer tokens) {
+            this(tokens, tokens.size());
+        }
+
+        private BufferTokenStream(TokenBuffer tokens, int end) {
+            super(tokens.getSymbols());
+            this.tokens = tokens;
+            this.end = end;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < end;
+        }
+
+        @Override
+        public Token get(int offset) {
+            return tokens.get(index + offset);
+        }
+
+        @Override
+        public Token.Type type(int offset) {
+            return tokens.getType(index + offset);
+        }
+
+        @Override
+        public Token.Kind kind(int offset) {
+            return tokens.getKind(index + offset);
+        }
+
+        @Override
+        public String literal(int offset) {
+            return tokens.getLiteral(index + offset).toString();
+        }
+
+        @Override
+        public Object value(int offset) {
+            return tokens.getValue(index + offset);
+        }
+
+        @Override
+        public String name(int offset) {
+            int symbol = tokens.getSymbol(index + offset);
+            return symbol >= 0 ? symbols.getName(symbol) : literal(offset);
+        }
+
+        @Override
+        public int symbol(int offset) {
+            int symbol = tokens.getSymbol(index + offset);
+            return symbol >= 0 ? symbol : symbols.intern(tokens.getLiteral(index + offset), 0, tokens.getLength(index + offset));
+        }
+
+        @Override
+        public boolean literalEquals(int offset, String literal) {
+            return tokens.literalEquals(index + offset, literal);
+        }
+
+        @Override
+        public IndexedTokenStream range(int start, int end) {
+            BufferTokenStream range = new BufferTokenStream(tokens, end);
+            range.index = start;
+            return range;
+        }
+
+    }
+
+    /**
+     * Pulls tokens from a {@link Lexer} on demand. Tokens are kept in a ring
+     * buffer covering the previous token (for {@code get(-1)}) through the
+     * furthest lookahead, so only a handful of tokens are ever retained.
+     */
+    private static final class LexerTokenStream extends TokenStream {
+
+        private final Lexer lexer;
+        private Token[] window = new Token[4];
+        private int lexed = 0;
+        private boolean exhausted = false;
+
+        private LexerTokenStream(Lexer lexer) {
+            super(lexer.getSymbols());
+            this.lexer = lexer;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            int position = index + offset;
+            while (position >= lexed && !exhausted) {
+                Token token = lexer.lexNext();
+                if (token == null) {
+                    exhausted = true;
+                }
+                else {
+                    if (lexed - index + 1 >= window.length) {
+                        grow();
+                    }
+                    window[lexed & (window.length - 1)] = token;
+                    lexed++;
+                }
+            }
+            return position < lexed;
+        }
+
+        @Override
+        public Token get(int offset) {
+            int position = index + offset;
+            if (offset < -1 || position < 0 || !has(offset)) {
+                throw new IndexOutOfBoundsException("Token " + position + " is not in the lookahead window.");
+            }
+            return window[position & (window.length - 1)];
+        }
+
+        /**
+         * Doubles the window when the parser looks further ahead than it
+         * currently holds, keeping the tokens at their absolute positions.
+         */
+        private void grow() {
+            Token[] grown = new Token[window.length * 2];
+            for (int i = Math.max(index - 1, 0); i < lexed; i++) {
+                grown[i & (grown.length - 1)] = window[i & (window.length - 1)];
+            }
+            window = grown;
+        }
+
+    }
 }
@@ -1,84 +1,275 @@
 package plc.project;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Function;
 
+/**
+ * Variables and functions are keyed by their {@link SymbolTable} id, with
+ * functions further indexed by arity, so resolving a name compares integers
+ * rather than hashing strings in each enclosing scope. Each scope only holds
+ * the names it defines, see {@link Definitions}, so a block or call scope
+ * stays small however many names the program has. Every scope shares the
+ * table of its root, which is created on first use unless one is given to
+ * {@link #Scope(Scope, SymbolTable)}.
+ *
+ * The {@code String} methods intern the name and delegate to the id methods.
+ * Lookups by name never add to the table, so an undefined name is reported
+ * without growing it.
+ */
 public final class Scope {
 
     private final Scope parent;
-    private final Map<String, Environment.Variable> variables = new HashMap<>();
-    private final Map<String, Environment.Function> functions = new HashMap<>();
+    private SymbolTable symbols;
+    private final Definitions<Environment.Variable> variables = new Definitions<>();
+    private final Definitions<Environment.Function[]> functions = new Definitions<>();
 
     public Scope(Scope parent) {
         this.parent = parent;
     }
 
+    /**
+     * Creates a scope using the given table, typically the one the program
+     * was lexed with, so that the ids of the lexer and the scope agree. The
+     * table must be the same as the parent's, if there is one.
+     */
+    public Scope(Scope parent, SymbolTable symbols) {
+        if (parent != null && parent.getSymbols() != symbols) {
+            throw new IllegalArgumentException("A scope must use the same symbol table as its parent.");
+        }
+        this.parent = parent;
+        this.symbols = symbols;
+    }
+
     public Scope getParent() {
         return parent;
     }
 
+    public SymbolTable getSymbols() {
+        if (symbols == null) {
+            symbols = parent != null ? parent.getSymbols() : new SymbolTable();
+        }
+        return symbols;
+    }
+
     public void defineVariable(String name, boolean mutable, Environment.PlcObject value) {
         defineVariable(name, name, Environment.Type.ANY, mutable, value);
     }
 
+    public void defineVariable(int symbol, boolean mutable, Environment.PlcObject value) {
+        String name = getSymbols().getName(symbol);
+        defineVariable(symbol, name, Environment.Type.ANY, mutable, value);
+    }
+
     public Environment.Variable defineVariable(String name, String jvmName, Environment.Type type, boolean mutable, Environment.PlcObject value) {
-        if (variables.containsKey(name)) {
+        return defineVariable(getSymbols().intern(name), jvmName, type, mutable, value);
+    }
+
+    public Environment.Variable defineVariable(int symbol, String jvmName, Environment.Type type, boolean mutable, Environment.PlcObject value) {
+        String name = getSymbols().getName(symbol);
+        if (variables.get(symbol) != null) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
             Environment.Variable variable = new Environment.Variable(name, jvmName, type, mutable, value);
-            variables.put(variable.getName(), variable);
-            return variables.get(name);
+            variables.put(symbol, variable);
+            return variable;
         }
     }
 
     public Environment.Variable lookupVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        } else if (parent != null) {
-            return parent.lookupVariable(name);
-        } else {
+        int symbol = getSymbols().lookup(name);
+        if (symbol < 0) {
             throw new RuntimeException("The variable " + name + " is not defined in this scope.");
         }
+        return lookupVariable(symbol);
+    }
+
+    public Environment.Variable lookupVariable(int symbol) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Variable variable = scope.variables.get(symbol);
+            if (variable != null) {
+                return variable;
+            }
+        }
+        throw new RuntimeException("The variable " + getSymbols().getName(symbol) + " is not defined in this scope.");
     }
 
     public void defineFunction(String name, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
+        defineFunction(getSymbols().intern(name), arity, function);
+    }
+
+    public void defineFunction(int symbol, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
         List<Environment.Type> parameterTypes = new ArrayList<>();
         for (int i = 0; i < arity; i++) {
             parameterTypes.add(Environment.Type.ANY);
         }
-        defineFunction(name, name, parameterTypes, Environment.Type.ANY, function);
+        defineFunction(symbol, getSymbols().getName(symbol), parameterTypes, Environment.Type.ANY, function);
     }
 
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
-            throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
+        return defineFunction(getSymbols().intern(name), jvmName, parameterTypes, returnType, function);
+    }
+
+    public Environment.Function defineFunction(int symbol, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
+        String name = getSymbols().getName(symbol);
+        int arity = parameterTypes.size();
+        if (find(symbol, arity) != null) {
+            throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
         } else {
-            Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
-            return func;
+            Environment.Function[] overloads = functions.get(symbol);
+            if (overloads == null || arity >= overloads.length) {
+                overloads = overloads == null ? new Environment.Function[arity + 1] : Arrays.copyOf(overloads, arity + 1);
+                functions.put(symbol, overloads);
+            }
+            overloads[arity] = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
+            return overloads[arity];
         }
     }
 
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
-        } else if (parent != null) {
-            return parent.lookupFunction(name, arity);
-        } else {
+        int symbol = getSymbols().lookup(name);
+        if (symbol < 0) {
             throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
         }
+        return lookupFunction(symbol, arity);
+    }
+
+    public Environment.Function lookupFunction(int symbol, int arity) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Function function = scope.find(symbol, arity);
+            if (function != null) {
+                return function;
+            }
+        }
+        throw new RuntimeException("The function " + getSymbols().getName(symbol) + "/" + arity + " is not defined in this scope.");
+    }
+
+    /**
+     * Returns the function defined in this scope, ignoring the parent, or null.
+     */
+    private Environment.Function find(int symbol, int arity) {
+        Environment.Function[] overloads = functions.get(symbol);
+        if (overloads != null && arity < overloads.length) {
+            return overloads[arity];
+        }
+        return null;
     }
 
     @Override
     public String toString() {
+        List<String> variableNames = new ArrayList<>();
+        for (int i = 0; i < variables.size(); i++) {
+            variableNames.add(variables.valueAt(i).getName());
+        }
+        List<String> functionNames = new ArrayList<>();
+        for (int i = 0; i < functions.size(); i++) {
+            for (Environment.Function function : functions.valueAt(i)) {
+                if (function != null) {
+                    functionNames.add(function.getName() + "/" + function.getParameterTypes().size());
+                }
+            }
+        }
         return "Scope{" +
                 "parent=" + parent +
-                ", variables=" + variables.keySet() +
-                ", functions=" + functions.keySet() +
+                ", variables=" + variableNames +
+                ", functions=" + functionNames +
                 '}';
     }
 
+    /**
+     * The definitions of a single scope keyed by symbol id, in the order they
+     * were defined. Most scopes define a handful of names, which are scanned
+     * linearly; larger ones, such as the global scope, also index them in an
+     * open-addressing table like that of {@link SymbolTable}.
+     */
+    private static final class Definitions<T> {
+
+        private static final int LINEAR = 8;
+        private static final int[] NO_SYMBOLS = {};
+        private static final Object[] NO_VALUES = {};
+
+        private int[] symbols = NO_SYMBOLS;
+        private Object[] values = NO_VALUES;
+        private int[] slots = null; // index + 1, or 0 for an empty slot
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        T valueAt(int index) {
+            return (T) values[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int symbol) {
+            int index = indexOf(symbol);
+            return index < 0 ? null : (T) values[index];
+        }
+
+        /**
+         * Defines {@code symbol}, replacing its value if it is already defined.
+         */
+        void put(int symbol, T value) {
+            int index = indexOf(symbol);
+            if (index >= 0) {
+                values[index] = value;
+                return;
+            }
+            if (size == symbols.length) {
+                symbols = Arrays.copyOf(symbols, Math.max(4, size * 2));
+                values = Arrays.copyOf(values, symbols.length);
+            }
+            symbols[size] = symbol;
+            values[size] = value;
+            size++;
+            if (slots != null && size * 2 <= slots.length) {
+                insert(size - 1);
+            } else if (size > LINEAR) {
+                slots = new int[Integer.highestOneBit(size) * 4];
+                for (int i = 0; i < size; i++) {
+                    insert(i);
+                }
+            }
+        }
+
+        private int indexOf(int symbol) {
+            if (slots == null) {
+                for (int i = 0; i < size; i++) {
+                    if (symbols[i] == symbol) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            int mask = slots.length - 1;
+            for (int slot = mix(symbol) & mask; ; slot = (slot + 1) & mask) {
+                int index = slots[slot] - 1;
+                if (index < 0 || symbols[index] == symbol) {
+                    return index;
+                }
+            }
+        }
+
+        private void insert(int index) {
+            int mask = slots.length - 1;
+            int slot = mix(symbols[index]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+
+        /**
+         * Scatters the dense ids of a table across the slots.
+         */
+        private static int mix(int symbol) {
+            int hash = symbol * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+    }
+
 }
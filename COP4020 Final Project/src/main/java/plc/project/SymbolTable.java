@@ -0,0 +1,154 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifiers for a single compilation, assigning each distinct name a
+ * dense integer id starting from zero. The {@link Lexer} interns identifiers
+ * directly from its input, so every occurrence of a name shares one {@link
+ * String}, and {@link Scope} indexes its definitions by id so that resolving a
+ * name is an array access rather than a hash lookup.
+ *
+ * Ids are only meaningful in the table which assigned them. {@link Ast} nodes
+ * are built from names, so the analyzer and interpreter resolve their ids
+ * against the table of their scope and cache the result outside the AST, see
+ * {@link NodeSymbols}.
+ *
+ * Interning is synchronized so a table may be shared between threads, such
+ * as the tasks of {@link Parser#parseSourceParallel()}; {@link #getName(int)}
+ * may be called for any id obtained through the table. Hot loops should not
+ * contend on the lock, so {@link Lexer#lexParallel(String)} interns each
+ * chunk into a table of its own and merges the tables afterwards.
+ */
+public final class SymbolTable {
+
+    private String[] names = new String[16];
+    private int[] hashes = new int[16];
+    private int[] slots = new int[32]; // id + 1, or 0 for an empty slot
+    private volatile int size = 0; // written after names, so getName can read both without the lock
+
+    /**
+     * Returns the id of {@code name}, assigning the next id if it has not been
+     * interned before.
+     */
+    public synchronized int intern(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(name, hash, slot);
+            }
+            else if (hashes[id] == hash && (names[id] == name || names[id].equals(name))) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the {@code length} characters of {@code chars} at
+     * {@code start}, only copying them if the name is new.
+     */
+    public synchronized int intern(CharSequence chars, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars.charAt(start + i);
+        }
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(chars.subSequence(start, start + length).toString(), hash, slot);
+            }
+            else if (hashes[id] == hash && regionEquals(names[id], chars, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the id of {@code name}, or -1 if it has not been interned. Unlike
+     * {@link #intern(String)}, this never grows the table.
+     */
+    public synchronized int lookup(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            else if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the name with the given id. This does not take the lock: {@link
+     * #size} is read first, and {@link #add(String, int, int)} only increases
+     * it after storing the name, so any id below it has its name visible.
+     */
+    public String getName(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Symbol " + id + " is not defined in this table.");
+        }
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int slot) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Spreads the high bits of the hash into the low bits, since String hashes
+     * of short names differ mostly in their low bits.
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionEquals(String name, CharSequence chars, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SymbolTable" + Arrays.toString(Arrays.copyOf(names, size));
+    }
+
+}
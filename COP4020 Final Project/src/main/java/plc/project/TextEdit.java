@@ -0,0 +1,75 @@
+package plc.project;
+
+import java.util.Objects;
+
+/**
+ * An edit to source text which replaces {@code removed} characters starting
+ * at {@code offset} with the {@code inserted} text. Used by the incremental
+ * lexing and parsing APIs, which are given the edit alongside the edited
+ * source so they can tell which parts of the previous result still apply.
+ */
+public final class TextEdit {
+
+    private final int offset;
+    private final int removed;
+    private final String inserted;
+
+    public TextEdit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0) {
+            throw new IllegalArgumentException("Invalid edit of " + removed + " characters at offset " + offset + ".");
+        }
+        this.offset = offset;
+        this.removed = removed;
+        this.inserted = inserted;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public String getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Returns the change in length of the text, which is also how far text
+     * after the edit moves.
+     */
+    public int getDelta() {
+        return inserted.length() - removed;
+    }
+
+    /**
+     * Returns the text with this edit applied.
+     */
+    public String apply(String text) {
+        return text.substring(0, offset) + inserted + text.substring(offset + removed);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TextEdit &&
+                offset == ((TextEdit) obj).offset &&
+                removed == ((TextEdit) obj).removed &&
+                inserted.equals(((TextEdit) obj).inserted);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(offset, removed, inserted);
+    }
+
+    @Override
+    public String toString() {
+        return "TextEdit{" +
+                "offset=" + offset +
+                ", removed=" + removed +
+                ", inserted='" + inserted + '\'' +
+                '}';
+    }
+
+}
@@ -1,5 +1,8 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
 public final class Token {
 
     public enum Type {
@@ -11,28 +14,225 @@ public final class Token {
         OPERATOR
     }
 
+    /**
+     * The keyword or operator spelled by a token's literal, or {@link #NONE}.
+     * Tokens are classified as they are created so that the {@link Parser} can
+     * dispatch on the kind rather than comparing literals.
+     *
+     * Single character operators are looked up directly by character. Keywords
+     * and two character operators are looked up in a perfect hash table
+     * indexed by {@code (first + 33 * last + length) & 63}, which has no
+     * collisions between them, so a lookup is one hash and one comparison.
+     */
+    public enum Kind {
+
+        NONE(""),
+        LIST("LIST"), VAR("VAR"), VAL("VAL"), FUN("FUN"), DO("DO"), END("END"),
+        LET("LET"), SWITCH("SWITCH"), CASE("CASE"), DEFAULT("DEFAULT"),
+        IF("IF"), ELSE("ELSE"), WHILE("WHILE"), RETURN("RETURN"),
+        NIL("NIL"), TRUE("TRUE"), FALSE("FALSE"),
+        AND("&&"), OR("||"), EQUAL("=="), NOT_EQUAL("!="),
+        LESS("<"), GREATER(">"), PLUS("+"), MINUS("-"), TIMES("*"), DIVIDE("/"), POWER("^"),
+        ASSIGN("="), LEFT_PAREN("("), RIGHT_PAREN(")"), LEFT_BRACKET("["), RIGHT_BRACKET("]"),
+        COMMA(","), SEMICOLON(";"), COLON(":");
+
+        private static final Kind[] CHARACTERS = new Kind[128];
+        private static final Kind[] TABLE = new Kind[64];
+
+        static {
+            for (Kind kind : values()) {
+                if (kind.literal.length() == 1) {
+                    CHARACTERS[kind.literal.charAt(0)] = kind;
+                }
+                else if (kind != NONE) {
+                    int hash = hash(kind.literal, 0, kind.literal.length());
+                    if (TABLE[hash] != null) {
+                        throw new AssertionError("Keyword hash collision between " + TABLE[hash] + " and " + kind + ".");
+                    }
+                    TABLE[hash] = kind;
+                }
+            }
+        }
+
+        private final String literal;
+
+        Kind(String literal) {
+            this.literal = literal;
+        }
+
+        public String getLiteral() {
+            return literal;
+        }
+
+        public static Kind of(CharSequence literal) {
+            return of(literal, 0, literal.length());
+        }
+
+        /**
+         * Returns the kind of the literal in {@code chars} starting at {@code
+         * start}, without copying it.
+         */
+        public static Kind of(CharSequence chars, int start, int length) {
+            if (length == 1) {
+                char c = chars.charAt(start);
+                Kind kind = c < 128 ? CHARACTERS[c] : null;
+                return kind != null ? kind : NONE;
+            }
+            if (length < 2 || length > 7) {
+                return NONE;
+            }
+            Kind kind = TABLE[hash(chars, start, length)];
+            if (kind == null || kind.literal.length() != length) {
+                return NONE;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars.charAt(start + i) != kind.literal.charAt(i)) {
+                    return NONE;
+                }
+            }
+            return kind;
+        }
+
+        private static int hash(CharSequence chars, int start, int length) {
+            return (chars.charAt(start) + 33 * chars.charAt(start + length - 1) + length) & (TABLE.length - 1);
+        }
+
+    }
+
+    private static final Object UNDECODED = new Object();
+
     private final Type type;
     private final String literal;
     private final int index;
+    private final Kind kind;
+    private final int symbol;
+    private Object value;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, Kind.of(literal), -1);
+    }
+
+    public Token(Type type, String literal, int index, Kind kind) {
+        this(type, literal, index, kind, -1);
+    }
+
+    /**
+     * Creates a token with the id of its literal in a {@link SymbolTable}, or
+     * -1 if it has none. The lexer interns identifiers, and then the literal
+     * is the table's copy of the name.
+     */
+    public Token(Type type, String literal, int index, Kind kind, int symbol) {
+        this(type, literal, index, kind, symbol, UNDECODED);
+    }
+
+    /**
+     * Creates a token with an already decoded value, such as when a token is
+     * copied, see {@link #getValue()}.
+     */
+    public Token(Type type, String literal, int index, Kind kind, int symbol, Object value) {
         this.type = type;
         this.literal = literal;
         this.index = index;
+        this.kind = kind;
+        this.symbol = symbol;
+        this.value = value;
     }
 
     public Type getType() {
         return type;
     }
 
+    public Kind getKind() {
+        return kind;
+    }
+
     public String getLiteral() {
         return literal;
     }
 
+    /**
+     * Returns the symbol id of an identifier in the table of the lexer which
+     * produced it, or -1 if the token was not interned.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     public int getIndex() {
         return index;
     }
 
+    /**
+     * Returns the value of a literal token: a {@link BigInteger}, {@link
+     * BigDecimal}, {@link Character} or unescaped {@link String}. Other tokens
+     * have no value and return null.
+     *
+     * The value is decoded the first time it is requested and then kept, so
+     * the parser never rescans a literal and tokens which are never parsed,
+     * or which a lex method produced from invalid input, are not decoded.
+     * Decoding is a second pass over the literal rather than part of the
+     * lexer's scan, since the lexer's char streams do not all hold a token's
+     * characters until it is emitted, but it is a single pass which handles
+     * every escape.
+     * Values are immutable, so a race between threads decoding the same token
+     * only repeats the work.
+     */
+    public Object getValue() {
+        Object value = this.value;
+        if (value == UNDECODED) {
+            value = decode(type, literal);
+            this.value = value;
+        }
+        return value;
+    }
+
+    /**
+     * Decodes the value of a literal of the given type, assuming the literal
+     * is valid as checked by the lexer.
+     */
+    static Object decode(Type type, CharSequence literal) {
+        switch (type) {
+            case INTEGER:
+                return new BigInteger(literal.toString());
+            case DECIMAL:
+                return new BigDecimal(literal.toString());
+            case CHARACTER:
+                return literal.length() == 3 ? literal.charAt(1) : unescape(literal.charAt(2));
+            case STRING:
+                return unescape(literal.toString());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Removes the quotes of a string literal and replaces each escape with the
+     * character it stands for, in a single pass over the literal.
+     */
+    private static String unescape(String literal) {
+        int escape = literal.indexOf('\\');
+        if (escape < 0) {
+            return literal.substring(1, literal.length() - 1);
+        }
+        StringBuilder builder = new StringBuilder(literal.length() - 2);
+        builder.append(literal, 1, escape);
+        for (int i = escape; i < literal.length() - 1; i++) {
+            char c = literal.charAt(i);
+            builder.append(c == '\\' ? unescape(literal.charAt(++i)) : c);
+        }
+        return builder.toString();
+    }
+
+    private static char unescape(char c) {
+        switch (c) {
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            default: return c; // ', " and \ stand for themselves
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
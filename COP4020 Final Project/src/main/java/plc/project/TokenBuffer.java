@@ -0,0 +1,317 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact sequence of tokens produced by {@link Lexer#lexBuffer()}. Rather
+ * than a {@link Token} object per token, the buffer stores parallel arrays of
+ * types, kinds, start offsets, lengths and symbol ids over the original
+ * input, which is roughly 14 bytes per token. Literals are exposed as {@link CharSequence}
+ * views over the input and are only copied if {@link CharSequence#toString()}
+ * is called. Identifiers are interned into a {@link SymbolTable} as they are
+ * added, so their names are only copied the first time they appear.
+ *
+ * Streams which do not hold their input in memory, such as a {@link
+ * Lexer.ReaderCharStream}, fill a buffer created with {@link
+ * #TokenBuffer(int, SymbolTable)} instead. That buffer keeps its own copy of
+ * the text of each token, so literals are views over the copy while indices
+ * still refer to the original input.
+ *
+ * The {@link Parser} can consume a buffer directly through {@link
+ * Parser#Parser(TokenBuffer)}, or it can be viewed as a {@code List<Token>}
+ * through {@link #asList()}.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final Token.Kind[] KINDS = Token.Kind.values();
+
+    private final CharSequence input;
+    private final SymbolTable symbols;
+    private byte[] types;
+    private byte[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int[] ids;
+    private int[] offsets; // offsets of literals within a copied input, or null
+    private Object[] values = null;
+    private int size = 0;
+
+    public TokenBuffer(CharSequence input) {
+        this(input, 16);
+    }
+
+    public TokenBuffer(CharSequence input, int capacity) {
+        this(input, capacity, new SymbolTable());
+    }
+
+    public TokenBuffer(CharSequence input, int capacity, SymbolTable symbols) {
+        this(input, capacity, symbols, false);
+    }
+
+    /**
+     * Creates a buffer which copies the text of each token, for input which is
+     * not held in memory. Tokens are added with {@link #add(Token.Type, int,
+     * CharSequence, int, int)}.
+     */
+    public TokenBuffer(int capacity, SymbolTable symbols) {
+        this(new StringBuilder(), capacity, symbols, true);
+    }
+
+    private TokenBuffer(CharSequence input, int capacity, SymbolTable symbols, boolean copied) {
+        this.input = input;
+        this.symbols = symbols;
+        this.types = new byte[Math.max(capacity, 1)];
+        this.kinds = new byte[types.length];
+        this.starts = new int[types.length];
+        this.lengths = new int[types.length];
+        this.ids = new int[types.length];
+        this.offsets = copied ? new int[types.length] : null;
+    }
+
+    /**
+     * Appends a token of the given type spanning {@code length} characters of
+     * the input starting at {@code start}. The {@link Token.Kind} is classified
+     * from the input in place.
+     */
+    public void add(Token.Type type, int start, int length) {
+        if (offsets != null) {
+            throw new IllegalStateException("A buffer which copies its input must be given the text of each token.");
+        }
+        add(type, start, start, length);
+    }
+
+    /**
+     * Appends a token of the given type starting at {@code start} in the input,
+     * copying its text from the {@code length} characters of {@code text}
+     * starting at {@code offset}. This is only supported by buffers created
+     * with {@link #TokenBuffer(int, SymbolTable)}.
+     */
+    public void add(Token.Type type, int start, CharSequence text, int offset, int length) {
+        if (offsets == null) {
+            throw new IllegalStateException("A buffer over its input cannot copy the text of a token.");
+        }
+        StringBuilder copy = (StringBuilder) input;
+        int position = copy.length();
+        copy.append(text, offset, offset + length);
+        add(type, start, position, length);
+    }
+
+    private void add(Token.Type type, int start, int offset, int length) {
+        if (size == types.length) {
+            int capacity = types.length + (types.length >> 1) + 1;
+            types = Arrays.copyOf(types, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            if (offsets != null)
+                offsets = Arrays.copyOf(offsets, capacity);
+            if (values != null)
+                values = Arrays.copyOf(values, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        kinds[size] = (byte) Token.Kind.of(input, offset, length).ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        ids[size] = type == Token.Type.IDENTIFIER ? symbols.intern(input, offset, length) : -1;
+        if (offsets != null)
+            offsets[size] = offset;
+        size++;
+    }
+
+    /**
+     * Returns true if the buffer copies the text of its tokens rather than
+     * referencing the input, see {@link #TokenBuffer(int, SymbolTable)}.
+     */
+    public boolean isCopied() {
+        return offsets != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the input which literals are views over. For a buffer which
+     * copies its input, this is the text of its tokens without whitespace,
+     * so it is not indexed by {@link #getIndex(int)}.
+     */
+    public CharSequence getInput() {
+        return input;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public Token.Type getType(int i) {
+        return TYPES[types[checkIndex(i)]];
+    }
+
+    public Token.Kind getKind(int i) {
+        return KINDS[kinds[checkIndex(i)]];
+    }
+
+    /**
+     * Returns the id of an identifier in {@link #getSymbols()}, or -1 for
+     * other tokens.
+     */
+    public int getSymbol(int i) {
+        return ids[checkIndex(i)];
+    }
+
+    /**
+     * Returns the decoded value of a literal token as in {@link
+     * Token#getValue()}. Values are decoded on first use and kept in the
+     * buffer, so literals which are never parsed cost nothing. Parsers may
+     * read a buffer concurrently, in which case a value may be decoded more
+     * than once.
+     */
+    public Object getValue(int i) {
+        Token.Type type = getType(i);
+        if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) {
+            return null;
+        }
+        Object[] values = this.values;
+        if (values == null) {
+            values = this.values = new Object[types.length];
+        }
+        Object value = values[i];
+        if (value == null) {
+            value = values[i] = Token.decode(type, getLiteral(i));
+        }
+        return value;
+    }
+
+    /**
+     * Returns the index of the token's first character in the input, as in
+     * {@link Token#getIndex()}.
+     */
+    public int getIndex(int i) {
+        return starts[checkIndex(i)];
+    }
+
+    public int getLength(int i) {
+        return lengths[checkIndex(i)];
+    }
+
+    /**
+     * Returns a view of the token's literal over the input without copying.
+     */
+    public CharSequence getLiteral(int i) {
+        return new Literal(input, offset(checkIndex(i)), lengths[i]);
+    }
+
+    /**
+     * Returns true if the token's literal is exactly {@code literal}, comparing
+     * in place against the input.
+     */
+    public boolean literalEquals(int i, String literal) {
+        int start = offset(checkIndex(i));
+        int length = lengths[i];
+        if (length != literal.length())
+            return false;
+        for (int j = 0; j < length; j++) {
+            if (input.charAt(start + j) != literal.charAt(j))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Materializes the token at {@code i} as a {@link Token}.
+     */
+    public Token get(int i) {
+        String literal = ids[checkIndex(i)] >= 0 ? symbols.getName(ids[i]) : getLiteral(i).toString();
+        Object value = values != null ? values[i] : null;
+        if (value != null) {
+            return new Token(getType(i), literal, starts[i], getKind(i), ids[i], value);
+        }
+        return new Token(getType(i), literal, starts[i], getKind(i), ids[i]);
+    }
+
+    /**
+     * Returns a read-only list view which materializes tokens on access.
+     */
+    public List<Token> asList() {
+        return new AbstractList<Token>() {
+
+            @Override
+            public Token get(int index) {
+                return TokenBuffer.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+        };
+    }
+
+    /**
+     * Returns the offset of the token's literal within {@link #input}.
+     */
+    private int offset(int i) {
+        return offsets != null ? offsets[i] : starts[i];
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    /**
+     * A zero-copy view of a range of the input.
+     */
+    private static final class Literal implements CharSequence {
+
+        private final CharSequence input;
+        private final int start;
+        private final int length;
+
+        private Literal(CharSequence input, int start, int length) {
+            this.input = input;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+            }
+            return input.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length);
+            }
+            return new Literal(input, this.start + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return input.subSequence(start, start + length).toString();
+        }
+
+    }
+
+}
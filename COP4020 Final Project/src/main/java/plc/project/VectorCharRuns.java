@@ -0,0 +1,76 @@
+package plc.project;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vector implementation of {@link CharRuns}. This class must only be
+ * loaded once the incubator module is known to be present, which {@link
+ * CharRuns} checks before referencing it.
+ *
+ * Characters are loaded as unsigned shorts in vectors of the preferred
+ * species, which is 16 to 32 characters on current hardware. Each class is
+ * tested with a few lane-wise comparisons and the first character outside of
+ * it is found with {@link VectorMask#firstTrue()}. Characters beyond the last
+ * full vector are not checked.
+ */
+final class VectorCharRuns {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    private VectorCharRuns() {}
+
+    static int scan(char[] chars, int from, int to, int run) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            ShortVector vector = ShortVector.fromCharArray(SPECIES, chars, i);
+            VectorMask<Short> outside = contains(vector, run).not();
+            if (outside.anyTrue()) {
+                return i + outside.firstTrue();
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Returns the lanes which are part of the run, matching the character
+     * classes of the {@link Lexer}.
+     */
+    private static VectorMask<Short> contains(ShortVector vector, int run) {
+        switch (run) {
+            case CharRuns.WHITESPACE:
+                return vector.eq((short) ' ')
+                        .or(vector.eq((short) '\n'))
+                        .or(vector.eq((short) '\r'))
+                        .or(vector.eq((short) '\t'))
+                        .or(vector.eq((short) '\b'));
+            case CharRuns.IDENTIFIER:
+                return between(vector, 'a', 'z')
+                        .or(between(vector, 'A', 'Z'))
+                        .or(between(vector, '0', '9'))
+                        .or(vector.eq((short) '_'))
+                        .or(vector.eq((short) '-'));
+            case CharRuns.DIGIT:
+                return between(vector, '0', '9');
+            case CharRuns.STRING:
+                return vector.eq((short) '"')
+                        .or(vector.eq((short) '\n'))
+                        .or(vector.eq((short) '\r'))
+                        .or(vector.eq((short) '\\'))
+                        .not();
+            default:
+                throw new AssertionError("Invalid run: " + run);
+        }
+    }
+
+    /**
+     * Returns the lanes in [low, high]. Characters above 0x7FFF are negative
+     * as shorts, so they are never in an ASCII range.
+     */
+    private static VectorMask<Short> between(ShortVector vector, char low, char high) {
+        return vector.compare(VectorOperators.GE, (short) low).and(vector.compare(VectorOperators.LE, (short) high));
+    }
+
+}
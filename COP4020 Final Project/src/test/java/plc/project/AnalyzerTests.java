@@ -1,16 +1,22 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -532,6 +538,50 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    void testAnalysis() {
+        String input = "VAR x: Integer = 1; LIST list: Integer = [1, 2]; " +
+                "FUN twice(n: Integer): Integer DO RETURN n * 2; END " +
+                "FUN main(): Integer DO LET y = twice(x) + 1; WHILE y < 10 DO y = y + 1; END print(y); RETURN y; END";
+        Parser parser = new Parser(new Lexer(input).lex());
+        Ast.Source ast = parser.parseSource();
+        List<Analysis> analyses = IntStream.range(0, 4).parallel().mapToObj(i -> {
+            Analyzer analyzer = new Analyzer(new Scope(null), new Analysis(parser.getNodeCount()));
+            analyzer.visit(ast);
+            return analyzer.getAnalysis();
+        }).collect(Collectors.toList());
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), ast);
+
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(expected);
+        Assertions.assertThrows(IllegalStateException.class, () -> ast.getGlobals().get(0).getVariable());
+        for (Analysis analysis : analyses) {
+            Assertions.assertEquals(expected.getGlobals().get(0).getVariable(), analysis.getVariable(ast.getGlobals().get(0)));
+            Assertions.assertEquals(expected.getFunctions().get(1).getFunction(), analysis.getFunction(ast.getFunctions().get(1)));
+            Assertions.assertEquals(generate(expected, Analysis.inPlace()), generate(ast, analysis));
+        }
+    }
+
+    @Test
+    void testSeparateParsers() {
+        // node ids restart from 0 for each parser, so yy has the id of x
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.visit(new Parser(new Lexer("VAR x: Integer = 1;").lex()).parseGlobal());
+        Ast.Source other = new Parser(new Lexer("VAR yy: Decimal = 2.0; VAR zz: Integer = x;").lex()).parseSource();
+        other.getGlobals().forEach(analyzer::visit);
+
+        Scope scope = analyzer.getScope();
+        Assertions.assertEquals(Environment.Type.INTEGER, scope.lookupVariable("x").getType());
+        Assertions.assertEquals(Environment.Type.DECIMAL, scope.lookupVariable("yy").getType());
+        Assertions.assertEquals(Environment.Type.INTEGER, scope.lookupVariable("zz").getType());
+    }
+
+    private static String generate(Ast ast, Analysis analysis) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer), analysis).visit(ast);
+        return writer.toString();
+    }
+
     /**
      * Helper function for tests. If {@param expected} is {@code null}, analysis
      * is expected to throw a {@link RuntimeException}.
@@ -0,0 +1,78 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+final class AstFormatTests {
+
+    private static final String INPUT = "VAR x: Integer = 1; VAL s: String = \"h\u00e9llo\"; LIST l: Decimal = [1.0, -2.50]; " +
+            "FUN f(a: Integer, b: String): Integer DO LET z: Integer = a * (b + 1) - 2 ^ 3; " +
+            "IF z < 3 && TRUE DO print(z); ELSE z = l[1]; END " +
+            "SWITCH z CASE 1: RETURN 1; DEFAULT WHILE z != 0 DO z = z - 1; END END RETURN NIL; END " +
+            "FUN main() DO f(123456789012345678901234567890, 'c'); LET q; END";
+    private static final Ast.Source EXPECTED = new Parser(new Lexer(INPUT).lex()).parseSource();
+    private static final Digest KEY = Digest.of(INPUT);
+    private static final byte[] BYTES = AstFormat.encode(EXPECTED, KEY);
+
+    @Test
+    void testEncode() throws IOException {
+        Assertions.assertTrue(BYTES.length < INPUT.length());
+        Assertions.assertEquals(EXPECTED, AstFormat.decode(ByteBuffer.wrap(BYTES)));
+        Assertions.assertEquals(KEY, AstFormat.getSourceDigest(ByteBuffer.wrap(BYTES)));
+    }
+
+    @Test
+    void testLoad(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("source.plca");
+        Assertions.assertNull(AstFormat.load(path, KEY));
+        AstFormat.write(EXPECTED, KEY, path);
+        Ast.Source loaded = AstFormat.load(path, KEY);
+        Assertions.assertTrue(loaded.getFunctions().get(0).isDeferred());
+        Assertions.assertEquals(EXPECTED.getDigest(), loaded.getDigest());
+        Assertions.assertTrue(loaded.getId() >= 0 && loaded.getFunctions().get(1).getId() >= 0);
+    }
+
+    @Test
+    void testLoadOtherSource(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("source.plca");
+        AstFormat.write(EXPECTED, KEY, path);
+        Assertions.assertNull(AstFormat.load(path, Digest.of(INPUT + " ")));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("invalid")
+    void testDecodeInvalid(String test, byte[] bytes) {
+        Assertions.assertThrows(IOException.class, () -> AstFormat.decode(ByteBuffer.wrap(bytes)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("invalid")
+    void testLoadInvalid(String test, byte[] bytes, @TempDir Path directory) throws IOException {
+        Path path = directory.resolve("source.plca");
+        Files.write(path, bytes);
+        Assertions.assertNull(AstFormat.load(path, KEY));
+    }
+
+    private static Stream<Arguments> invalid() {
+        byte[] outdated = BYTES.clone();
+        outdated[4] = AstFormat.VERSION + 1;
+        return Stream.of(
+                Arguments.of("Other Version", outdated),
+                Arguments.of("Truncated Header", Arrays.copyOf(BYTES, 6)),
+                Arguments.of("Truncated Nodes", Arrays.copyOf(BYTES, BYTES.length - 1)),
+                Arguments.of("Not Encoded", INPUT.getBytes())
+        );
+    }
+
+}
@@ -0,0 +1,74 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+final class AstPoolTests {
+
+    private static final String INPUT = "VAR x: Integer = (1 + 2) * 3; LIST l: Integer = [1, 2]; " +
+            "FUN f(a: Integer): Integer DO RETURN a + (1 + 2) * 3; END " +
+            "FUN main(): Integer DO LET y: Integer = (1 + 2) * 3; print(f(y) + 1); RETURN f(1) + 1; END";
+
+    @Test
+    void testEquivalent() {
+        Parser parser = new Parser(new Lexer(INPUT).lex());
+        parser.setPool(new AstPool());
+        Assertions.assertEquals(new Parser(new Lexer(INPUT).lex()).parseSource(), parser.parseSourceParallel());
+    }
+
+    @Test
+    void testShared() {
+        AstPool pool = new AstPool();
+        Ast.Source ast = parse(INPUT, pool);
+        Ast.Expression value = value(ast);
+        Ast.Expression.Binary sum = sum(ast);
+        Assertions.assertSame(value, sum.getRight());
+        Assertions.assertSame(value, ((Ast.Statement.Declaration) ast.getFunctions().get(1).getStatements().get(0)).getValue().get());
+        Assertions.assertTrue(pool.isShared(value));
+        Assertions.assertFalse(pool.isShared(sum));
+    }
+
+    @Test
+    void testSharedLiteral() {
+        AstPool pool = new AstPool();
+        Ast.Source ast = parse(INPUT, pool);
+        Ast.Expression.Binary call = (Ast.Expression.Binary) ((Ast.Statement.Return) ast.getFunctions().get(1).getStatements().get(2)).getValue();
+        Assertions.assertSame(((Ast.Expression.PlcList) ast.getGlobals().get(1).getValue().get()).getValues().get(0),
+                ((Ast.Expression.Function) call.getLeft()).getArguments().get(0));
+        Assertions.assertFalse(pool.isShared(call.getLeft()));
+    }
+
+    @Test
+    void testOtherParser() {
+        AstPool pool = new AstPool();
+        Ast.Expression value = value(parse(INPUT, pool));
+        Parser other = new Parser(new Lexer("VAL z: Integer = (1 + 2) * 3;").lex());
+        other.setPool(pool);
+        Assertions.assertSame(value, other.parseSource().getGlobals().get(0).getValue().get());
+        Assertions.assertEquals(pool.getNodeCount(), other.getNodeCount());
+    }
+
+    @Test
+    void testAnalysis() {
+        AstPool pool = new AstPool();
+        Ast.Source ast = parse(INPUT, pool);
+        Analysis analysis = new Analysis(pool.getNodeCount());
+        new Analyzer(new Scope(null), analysis).visit(ast);
+        Assertions.assertEquals(Environment.Type.INTEGER, analysis.getType(sum(ast)));
+    }
+
+    private static Ast.Source parse(String input, AstPool pool) {
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setPool(pool);
+        return parser.parseSourceParallel();
+    }
+
+    private static Ast.Expression value(Ast.Source ast) {
+        return ast.getGlobals().get(0).getValue().get();
+    }
+
+    private static Ast.Expression.Binary sum(Ast.Source ast) {
+        return (Ast.Expression.Binary) ((Ast.Statement.Return) ast.getFunctions().get(0).getStatements().get(0)).getValue();
+    }
+
+}
@@ -0,0 +1,77 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+final class DigestTests {
+
+    private static final String INPUT = "VAR x: Integer = 1; FUN f(a: Integer): Integer DO RETURN a * (x + 1.0); END " +
+            "FUN main(): Integer DO LET y = 'c'; print(f(1)); RETURN 0; END";
+
+    @Test
+    void testSame() {
+        Ast.Source ast = parse(INPUT);
+        Ast.Source same = parse(INPUT);
+        Assertions.assertEquals(ast.getDigest(), same.getDigest());
+        Assertions.assertEquals(ast.hashCode(), same.hashCode());
+        Assertions.assertSame(ast.getDigest(), ast.getDigest());
+    }
+
+    @Test
+    void testEdit() {
+        Ast.Source ast = parse(INPUT);
+        Ast.Source edited = parse(INPUT.replace("1.0", "1.00"));
+        Assertions.assertNotEquals(ast.getDigest(), edited.getDigest());
+        Assertions.assertNotEquals(ast.getFunctions().get(0).getDigest(), edited.getFunctions().get(0).getDigest());
+        Assertions.assertEquals(ast.getFunctions().get(1).getDigest(), edited.getFunctions().get(1).getDigest());
+        Assertions.assertEquals(ast.getGlobals().get(0).getDigest(), edited.getGlobals().get(0).getDigest());
+    }
+
+    @Test
+    void testHashMap() {
+        Map<Ast, String> cache = new HashMap<>();
+        cache.put(parse(INPUT).getFunctions().get(1), "main");
+        Assertions.assertEquals("main", cache.get(parse(INPUT.replace("1.0", "1.00")).getFunctions().get(1)));
+    }
+
+    @Test
+    void testLazy() {
+        Parser parser = new Parser(new Lexer(INPUT).lex());
+        parser.setLazy(true);
+        Assertions.assertEquals(parse(INPUT).getDigest(), parser.parseSource().getDigest());
+    }
+
+    @Test
+    void testPooled() {
+        Parser parser = new Parser(new Lexer(INPUT).lex());
+        parser.setPool(new AstPool());
+        Assertions.assertEquals(parse(INPUT).getDigest(), parser.parseSource().getDigest());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testLiteral(String test, Object left, Object right) {
+        Assertions.assertNotEquals(new Ast.Expression.Literal(left).getDigest(), new Ast.Expression.Literal(right).getDigest());
+    }
+
+    private static Stream<Arguments> testLiteral() {
+        return Stream.of(
+                Arguments.of("Character and String", '1', "1"),
+                Arguments.of("Integer and Decimal", BigInteger.ONE, BigDecimal.ONE)
+        );
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
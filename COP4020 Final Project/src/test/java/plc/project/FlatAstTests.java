@@ -0,0 +1,109 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigInteger;
+import java.util.List;
+
+final class FlatAstTests {
+
+    private static final String INPUT = "VAR x: Integer = 1; LIST l: Integer = [1, 2, x]; " +
+            "FUN f(a: Integer, b: String): Integer DO LET z: Integer = a * (b + 1) - 2 ^ 3; " +
+            "IF z < 3 && TRUE DO print(z); ELSE z = l[1]; END " +
+            "SWITCH z CASE 1: RETURN 1; DEFAULT WHILE z != 0 DO z = z - 1; END END RETURN NIL; END " +
+            "FUN main() DO f(1, \"x\"); LET q; END";
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testToSource(boolean lazy) {
+        Parser parser = new Parser(new Lexer(INPUT).lexBuffer());
+        parser.setLazy(lazy);
+        Assertions.assertEquals(new Parser(new Lexer(INPUT).lex()).parseSource(), parser.parseFlatSource().toSource());
+    }
+
+    @Test
+    void testNavigation() {
+        Ast.Source expected = new Parser(new Lexer(INPUT).lex()).parseSource();
+        FlatAst ast = new Parser(new Lexer(INPUT).lexBuffer()).parseFlatSource();
+        int global = ast.getFirstChild(ast.getRoot());
+        Assertions.assertEquals(FlatAst.Kind.GLOBAL, ast.getKind(global));
+        Assertions.assertEquals("x", ast.getName(global));
+        Assertions.assertEquals(BigInteger.ONE, ast.getLiteral(ast.getFirstChild(global)));
+        Assertions.assertEquals(4, ast.getChildCount(ast.getRoot()));
+        int function = ast.getNextSibling(ast.getNextSibling(global));
+        Assertions.assertEquals(expected.getFunctions().get(0), ast.toAst(function));
+    }
+
+    @Test
+    void testVisitor() {
+        FlatAst ast = new Parser(new Lexer(INPUT).lexBuffer()).parseFlatSource();
+        int nodes = 0;
+        for (int node = 0; node < ast.size(); node++) {
+            if (ast.getKind(node) != FlatAst.Kind.BLOCK && ast.getKind(node) != FlatAst.Kind.PARAMETER) {
+                nodes++;
+            }
+        }
+        Assertions.assertEquals(nodes, ast.accept(ast.getRoot(), new FlatAst.Visitor<Integer>() {
+
+            private int children(int node) {
+                int count = 1;
+                for (int child = ast.getFirstChild(node); child >= 0; child = ast.getNextSibling(child)) {
+                    if (ast.getKind(child) == FlatAst.Kind.BLOCK) {
+                        count += children(child) - 1;
+                    } else if (ast.getKind(child) != FlatAst.Kind.PARAMETER) {
+                        count += ast.accept(child, this);
+                    }
+                }
+                return count;
+            }
+
+            @Override public Integer visitSource(int node) { return children(node); }
+            @Override public Integer visitGlobal(int node) { return children(node); }
+            @Override public Integer visitFunction(int node) { return children(node); }
+            @Override public Integer visitExpression(int node) { return children(node); }
+            @Override public Integer visitDeclaration(int node) { return children(node); }
+            @Override public Integer visitAssignment(int node) { return children(node); }
+            @Override public Integer visitIf(int node) { return children(node); }
+            @Override public Integer visitSwitch(int node) { return children(node); }
+            @Override public Integer visitCase(int node) { return children(node); }
+            @Override public Integer visitWhile(int node) { return children(node); }
+            @Override public Integer visitReturn(int node) { return children(node); }
+            @Override public Integer visitLiteral(int node) { return children(node); }
+            @Override public Integer visitGroup(int node) { return children(node); }
+            @Override public Integer visitBinary(int node) { return children(node); }
+            @Override public Integer visitAccess(int node) { return children(node); }
+            @Override public Integer visitCall(int node) { return children(node); }
+            @Override public Integer visitList(int node) { return children(node); }
+
+        }));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "VAR x = 1;",
+            "LIST l: Integer = [1, 2;",
+            "FUN f(a: Integer, ) DO END",
+            "FUN f() DO SWITCH x CASE 1: y; END END",
+            "FUN f() DO IF x DO y = (1 + ; END END",
+            "FUN f() DO LET x: = 1; END",
+    })
+    void testFlatException(String input) {
+        List<Token> tokens = new Lexer(input).lex();
+        ParseException expected = null;
+        try {
+            Assertions.assertEquals(new Parser(tokens).parseSource(), new Parser(tokens).parseFlatSource().toSource());
+        } catch (ParseException e) {
+            expected = e;
+        }
+        if (expected != null) {
+            ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseFlatSource());
+            Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+            Assertions.assertEquals(expected.getMessage(), exception.getMessage());
+        }
+    }
+
+}
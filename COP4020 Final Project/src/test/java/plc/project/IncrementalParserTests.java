@@ -0,0 +1,57 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+final class IncrementalParserTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testEdit(String test, TextEdit edit) {
+        String input = "VAR x: Integer = 1; VAL y: Integer = 2; " +
+                "FUN first(): Integer DO RETURN x + 1; END " +
+                "FUN second(z: Integer) DO WHILE z > 0 DO z = z - 1; END END " +
+                "FUN third(): Integer DO RETURN first(); END";
+        IncrementalParser parser = new IncrementalParser(input);
+        Ast.Source previous = parser.getSource();
+        Ast.Source ast = parser.edit(edit);
+        Assertions.assertEquals(new Parser(new Lexer(edit.apply(input)).lex()).parseSource(), ast);
+        // declarations before and after the edit are reused
+        Assertions.assertSame(previous.getGlobals().get(0), ast.getGlobals().get(0));
+        Assertions.assertSame(previous.getFunctions().get(previous.getFunctions().size() - 1), ast.getFunctions().get(ast.getFunctions().size() - 1));
+    }
+
+    private static Stream<Arguments> testEdit() {
+        return Stream.of(
+                Arguments.of("Rename Global", new TextEdit(24, 1, "w")),
+                Arguments.of("Edit Expression", new TextEdit(71, 1, "2 * x")),
+                Arguments.of("Edit Body", new TextEdit(123, 10, "z = z / 2;")),
+                Arguments.of("Insert Function", new TextEdit(142, 0, "FUN fourth() DO END ")),
+                Arguments.of("Remove Function", new TextEdit(82, 60, ""))
+        );
+    }
+
+    @Test
+    void testEditEquality() {
+        Set<TextEdit> edits = new HashSet<>(List.of(new TextEdit(24, 1, "w"), new TextEdit(24, 1, "v")));
+        Assertions.assertTrue(edits.contains(new TextEdit(24, 1, "w")));
+        Assertions.assertFalse(edits.contains(new TextEdit(24, 0, "w")));
+    }
+
+    @Test
+    void testEditException() {
+        IncrementalParser parser = new IncrementalParser("VAR x: Integer = 1; FUN main() DO x = 2; END");
+        Assertions.assertThrows(ParseException.class, () -> parser.edit(new TextEdit(34, 0, "DO ")));
+        Ast.Source ast = parser.edit(new TextEdit(34, 3, ""));
+        Assertions.assertEquals(new Parser(new Lexer(parser.getInput()).lex()).parseSource(), ast);
+    }
+
+}
@@ -547,6 +547,20 @@ final class InterpreterTests {
         test(ast, expected, new Scope(null));
     }
 
+    @Test
+    void testSeparateParsers() {
+        // node ids restart from 0 for each parser, so yy has the id of x
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.visit(new Parser(new Lexer("VAR x: Integer = 1;").lex()).parseGlobal());
+        Ast.Source other = new Parser(new Lexer("VAR yy: Integer = 2; VAR zz: Integer = x + yy;").lex()).parseSource();
+        other.getGlobals().forEach(interpreter::visit);
+
+        Scope scope = interpreter.getScope();
+        Assertions.assertEquals(BigInteger.ONE, scope.lookupVariable("x").getValue().getValue());
+        Assertions.assertEquals(BigInteger.valueOf(2), scope.lookupVariable("yy").getValue().getValue());
+        Assertions.assertEquals(BigInteger.valueOf(3), scope.lookupVariable("zz").getValue().getValue());
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
@@ -0,0 +1,92 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.stream.Stream;
+
+final class LazyParserTests {
+
+    private static final String INPUT = "VAR x: Integer = 1; " +
+            "FUN unused() DO SWITCH x CASE 1: x = ; DEFAULT x = 0; END END " +
+            "FUN main(): Integer DO WHILE x < 10 DO x = x + 1; END RETURN x; END";
+
+    @Test
+    void testDeferred() {
+        Ast.Source ast = lazy(INPUT).parseSource();
+        Assertions.assertTrue(ast.getFunctions().get(0).isDeferred());
+        Assertions.assertTrue(ast.getFunctions().get(1).isDeferred());
+        Assertions.assertTrue(new HashSet<Ast>(ast.getFunctions()).contains(ast.getFunctions().get(0)));
+        Assertions.assertTrue(ast.toString().contains("statements=<deferred>"));
+        Assertions.assertTrue(ast.getFunctions().get(0).isDeferred());
+    }
+
+    @Test
+    void testInterpreter() {
+        Parser parser = lazy(INPUT);
+        Ast.Source ast = parser.parseSource();
+        Scope scope = new Scope(null, parser.getSymbols());
+        Assertions.assertEquals(BigInteger.TEN, new Interpreter(scope).visit(ast).getValue());
+        Assertions.assertTrue(ast.getFunctions().get(0).isDeferred());
+        Assertions.assertFalse(ast.getFunctions().get(1).isDeferred());
+    }
+
+    @Test
+    void testDeferredException() {
+        Ast.Source ast = lazy(INPUT).parseSource();
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> ast.getFunctions().get(0).getStatements());
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(INPUT).lex()).parseSource());
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testEquivalent(String test, String input) {
+        Ast.Source ast = lazy(input).parseSource();
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), ast);
+    }
+
+    private static Stream<Arguments> testEquivalent() {
+        return Stream.of(
+                Arguments.of("Blocks", "FUN first(): Integer DO IF x < 10 DO x = x + 1; ELSE WHILE x > 0 DO x = x - 1; END END RETURN x; END " +
+                        "FUN second(y: Integer) DO SWITCH y CASE 1: print(\"one\"); DEFAULT print(y); END END"),
+                Arguments.of("Keyword Names", "FUN a() DO LET DO = 1; LET x = END; SWITCH DO DEFAULT END END FUN b() DO WHILE DO DO END END")
+        );
+    }
+
+    @Test
+    void testKeywordNamesEager() {
+        String input = "FUN a() DO LET DO = 1; LET x = END; SWITCH DO DEFAULT END END FUN b() DO WHILE DO DO END END";
+        Assertions.assertFalse(lazy(input).parseSource().getFunctions().get(0).isDeferred());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testEquivalentException(String test, String input) {
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> lazy(input).parseSource());
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    private static Stream<Arguments> testEquivalentException() {
+        return Stream.of(
+                Arguments.of("Unterminated", "FUN first(): Integer DO IF x < 10 DO x = x + 1; ELSE WHILE x > 0 DO x = x - 1; END END RETURN x; END " +
+                        "FUN second(y: Integer) DO SWITCH y CASE 1: print(\"one\"); DEFAULT print(y); END END " +
+                        "FUN unterminated() DO print(1);"),
+                // a name spelled DO would make the scan take the last END for the end of the first function
+                Arguments.of("Misplaced End", "FUN a() DO LET DO = 1; print(1); END FUN c() DO END END")
+        );
+    }
+
+    private static Parser lazy(String input) {
+        Parser parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setLazy(true);
+        return parser;
+    }
+
+}
@@ -2,12 +2,23 @@ package plc.project;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -203,6 +214,18 @@ public class LexerTests {
                         new Token(Token.Type.IDENTIFIER, "toString", 2),
                         new Token(Token.Type.OPERATOR, "(", 10),
                         new Token(Token.Type.OPERATOR, ")", 11)
+                )),
+                Arguments.of("Negative Zero", "-0 -0.5", Arrays.asList(
+                        new Token(Token.Type.OPERATOR, "-", 0),
+                        new Token(Token.Type.INTEGER, "0", 1),
+                        new Token(Token.Type.DECIMAL, "-0.5", 3)
+                )),
+                Arguments.of("Non-ASCII Operator", "a\u00e9=-b", Arrays.asList(
+                        new Token(Token.Type.IDENTIFIER, "a", 0),
+                        new Token(Token.Type.OPERATOR, "\u00e9", 1),
+                        new Token(Token.Type.OPERATOR, "=", 2),
+                        new Token(Token.Type.OPERATOR, "-", 3),
+                        new Token(Token.Type.IDENTIFIER, "b", 4)
                 ))
         );
     }
@@ -214,6 +237,314 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testExceptionIndex(String test, String input, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(input).lex());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testExceptionIndex() {
+        return Stream.of(
+                Arguments.of("Invalid Escape", "x = \"a\\qb\";", 7),
+                Arguments.of("Newline In String", "\"a\nb\"", 2),
+                Arguments.of("Empty Character", "''", 1),
+                Arguments.of("Unterminated Character", "'ab'", 2),
+                Arguments.of("Trailing Escape", "'\\", 2)
+        );
+    }
+
+    @Test
+    void testBufferLiteral() {
+        TokenBuffer buffer = new Lexer("print(\"Hello, World!\");").lexBuffer();
+        Assertions.assertEquals(5, buffer.size());
+        Assertions.assertEquals(Token.Type.STRING, buffer.getType(2));
+        Assertions.assertEquals(6, buffer.getIndex(2));
+        Assertions.assertEquals("\"Hello, World!\"", buffer.getLiteral(2).toString());
+        Assertions.assertEquals("Hello", buffer.getLiteral(2).subSequence(1, 6).toString());
+        Assertions.assertTrue(buffer.literalEquals(0, "print"));
+        Assertions.assertFalse(buffer.literalEquals(0, "prin"));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testKind(String test, String input, Token.Kind expected) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(expected, token.getKind());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getKind(0));
+    }
+
+    private static Stream<Arguments> testKind() {
+        return Stream.of(
+                Arguments.of("Keyword", "LIST", Token.Kind.LIST),
+                Arguments.of("Short Keyword", "DO", Token.Kind.DO),
+                Arguments.of("Long Keyword", "DEFAULT", Token.Kind.DEFAULT),
+                Arguments.of("Lowercase", "list", Token.Kind.NONE),
+                Arguments.of("Keyword Prefix", "LISTS", Token.Kind.NONE),
+                Arguments.of("Same Hash Length", "LEST", Token.Kind.NONE),
+                Arguments.of("Identifier", "getName", Token.Kind.NONE),
+                Arguments.of("Single Operator", ";", Token.Kind.SEMICOLON),
+                Arguments.of("Double Operator", "!=", Token.Kind.NOT_EQUAL),
+                Arguments.of("Other Operator", "$", Token.Kind.NONE),
+                Arguments.of("Integer", "1", Token.Kind.NONE),
+                Arguments.of("String", "\"LET\"", Token.Kind.NONE)
+        );
+    }
+
+    @Test
+    void testKindLiterals() {
+        for (Token.Kind kind : Token.Kind.values()) {
+            if (kind != Token.Kind.NONE) {
+                Assertions.assertEquals(kind, Token.Kind.of(kind.getLiteral()), kind.getLiteral());
+                Assertions.assertEquals(kind, Token.Kind.of("  " + kind.getLiteral() + " ", 2, kind.getLiteral().length()), kind.getLiteral());
+            }
+        }
+    }
+
+    @Test
+    void testSymbols() {
+        SymbolTable symbols = new SymbolTable();
+        List<Token> tokens = new Lexer("name = other + name;", symbols).lex();
+        Assertions.assertEquals(2, symbols.size());
+        Assertions.assertEquals(0, tokens.get(0).getSymbol());
+        Assertions.assertEquals(1, tokens.get(2).getSymbol());
+        Assertions.assertEquals(0, tokens.get(4).getSymbol());
+        Assertions.assertEquals(-1, tokens.get(1).getSymbol());
+        Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(4).getLiteral());
+        Assertions.assertEquals(1, new Lexer("other", symbols).lexBuffer().getSymbol(0));
+        Assertions.assertEquals(1, new Lexer(new Lexer.ReaderCharStream(new StringReader("other"), 16), symbols).lexToken().getSymbol());
+        Assertions.assertEquals(-1, symbols.lookup("missing"));
+        Assertions.assertEquals(2, symbols.size());
+    }
+
+    @Test
+    void testSymbolsGrow() {
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i, symbols.intern("name" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            String name = "name" + i;
+            Assertions.assertEquals(i, symbols.intern("  " + name, 2, name.length()));
+            Assertions.assertEquals(name, symbols.getName(i));
+        }
+    }
+
+    @Test
+    void testScopeSymbols() {
+        Scope global = new Scope(null);
+        for (int i = 0; i < 1000; i++) {
+            global.defineVariable("name" + i, true, Environment.create(i));
+        }
+        global.defineFunction("f", 1, arguments -> Environment.NIL);
+        global.defineFunction("f", 3, arguments -> Environment.NIL);
+        // a late name in a small scope, which must not reserve a slot per earlier name
+        Scope block = new Scope(global);
+        block.defineVariable("name999", false, Environment.create("shadow"));
+        block.defineVariable("late", false, Environment.NIL);
+        Assertions.assertEquals("shadow", block.lookupVariable("name999").getValue().getValue());
+        Assertions.assertEquals(500, block.lookupVariable("name500").getValue().getValue());
+        Assertions.assertEquals(3, block.lookupFunction("f", 3).getParameterTypes().size());
+        Assertions.assertThrows(RuntimeException.class, () -> block.lookupFunction("f", 2));
+        Assertions.assertThrows(RuntimeException.class, () -> global.lookupVariable("late"));
+        Assertions.assertThrows(RuntimeException.class, () -> global.defineVariable("name3", true, Environment.NIL));
+        Assertions.assertEquals(999, global.lookupVariable("name999").getValue().getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testVectorRuns(String test, String input) {
+        boolean enabled = CharRuns.isEnabled();
+        try {
+            CharRuns.setEnabled(false);
+            Object expected = lexOrIndex(new Lexer(input));
+            CharRuns.setEnabled(true);
+            Assertions.assertEquals(expected, lexOrIndex(new Lexer(input)));
+            Assertions.assertEquals(expected, lexOrIndex(new Lexer(new Lexer.ReaderCharStream(new StringReader(input), 37))));
+        } finally {
+            CharRuns.setEnabled(enabled);
+        }
+    }
+
+    /**
+     * Returns the tokens, or the index of the exception if lexing fails.
+     */
+    private static Object lexOrIndex(Lexer lexer) {
+        try {
+            return lexer.lex();
+        } catch (ParseException e) {
+            return e.getIndex();
+        }
+    }
+
+    private static Stream<Arguments> testVectorRuns() {
+        return Stream.of(
+                Arguments.of("Whitespace", " ".repeat(100) + "x" + "\n\t\r\b".repeat(50) + "y"),
+                Arguments.of("Identifier", "a_" + "Z-9".repeat(70) + "+b"),
+                Arguments.of("Integer", "1" + "0123456789".repeat(30) + ".5" + "5".repeat(40)),
+                Arguments.of("String", "\"" + "abc \u00e9\u8000\uffff".repeat(40) + "\\n" + "x".repeat(60) + "\""),
+                Arguments.of("Unterminated String", "\"" + "abc".repeat(40) + "\n\""),
+                Arguments.of("Program", Lexer.class.getSimpleName().repeat(20) + " = \"" + " ".repeat(64) + "\";")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testValue(String test, String input, Object expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexToken().getValue());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getValue(0));
+    }
+
+    private static Stream<Arguments> testValue() {
+        return Stream.of(
+                Arguments.of("Integer", "-12345678901234567890", new BigInteger("-12345678901234567890")),
+                Arguments.of("Decimal", "0.50", new BigDecimal("0.50")),
+                Arguments.of("Character", "'c'", 'c'),
+                Arguments.of("Character Escape", "'\\''", '\''),
+                Arguments.of("String", "\"abc\"", "abc"),
+                Arguments.of("String Escapes", "\"a\\tb\\nc\\\\d\\\"\\b\\r\"", "a\tb\nc\\d\"\b\r"),
+                Arguments.of("Identifier", "name", null),
+                Arguments.of("Operator", "+", null)
+        );
+    }
+
+    @Test
+    void testParallel() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.append("LET x").append(i).append(" = \"a\\nb\" + 'c';\n\t-0.5 != 1..0 ").append(i % 7 == 0 ? "\n\n" : "\n");
+        }
+        String input = builder.toString();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(new Lexer(input).lex(), Lexer.lexParallel(input, pool, 64));
+            Assertions.assertEquals(new Lexer(input).lex(), Lexer.lexParallel(input, pool, 1));
+            // each chunk interns into its own table, but the merged ids match a sequential lex
+            SymbolTable symbols = new SymbolTable();
+            Assertions.assertEquals(new Lexer(input).lex().stream().map(Token::getSymbol).toList(),
+                    Lexer.lexParallel(input, pool, 64, symbols).stream().map(Token::getSymbol).toList());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelException() {
+        String input = "x = 1;\n".repeat(100) + "y = \"unterminated\nz = '';\n" + "x = 1;\n".repeat(100);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lex());
+            ParseException exception = Assertions.assertThrows(ParseException.class, () -> Lexer.lexParallel(input, pool, 16));
+            Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, TextEdit edit) {
+        String edited = edit.apply(input);
+        Assertions.assertEquals(new Lexer(edited).lex(), Lexer.relex(edited, new Lexer(input).lex(), edit));
+    }
+
+    private static Stream<Arguments> testRelex() {
+        String input = "LET x = -0.x; print(\"Hello\", 1 .5); y != z;";
+        return Stream.of(
+                Arguments.of("Extend Identifier", input, new TextEdit(5, 0, "yz")),
+                Arguments.of("Join Decimal", input, new TextEdit(11, 1, "5")),
+                Arguments.of("Split Operator", input, new TextEdit(40, 0, " ")),
+                Arguments.of("Insert String", input, new TextEdit(20, 0, "\"a\" + ")),
+                Arguments.of("Delete Everything", input, new TextEdit(0, input.length(), "")),
+                Arguments.of("Append", input, new TextEdit(input.length(), 0, " END")),
+                Arguments.of("Join Tokens", input, new TextEdit(31, 1, ""))
+        );
+    }
+
+    @Test
+    void testRelexRandom() {
+        String alphabet = "ab01.- =!\"'\\\n";
+        Random random = new Random(0);
+        String input = "LET x = 1; print(\"Hello\"); y = -0.5 != 'c';";
+        List<Token> tokens = new Lexer(input).lex();
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(input.length() + 1);
+            int removed = random.nextInt(Math.min(4, input.length() - offset) + 1);
+            StringBuilder inserted = new StringBuilder();
+            for (int j = random.nextInt(4); j > 0; j--) {
+                inserted.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            TextEdit edit = new TextEdit(offset, removed, inserted.toString());
+            String edited = edit.apply(input);
+            List<Token> expected;
+            try {
+                expected = new Lexer(edited).lex();
+            } catch (ParseException e) {
+                List<Token> previous = tokens;
+                ParseException exception = Assertions.assertThrows(ParseException.class, () -> Lexer.relex(edited, previous, edit));
+                Assertions.assertEquals(e.getIndex(), exception.getIndex());
+                continue;
+            }
+            tokens = Lexer.relex(edited, tokens, edit);
+            Assertions.assertEquals(expected, tokens, edited);
+            input = edited;
+        }
+    }
+
+    @Test
+    void testReaderBoundaries() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append("LET x").append(i).append(" = \"").append("\\n".repeat(i)).append("\"; -0.5 != ");
+        }
+        String input = builder.toString();
+        // a reader which returns one character at a time, so every token crosses a read
+        Reader reader = new StringReader(input) {
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+
+        };
+        Lexer lexer = new Lexer(new Lexer.ReaderCharStream(reader, 16));
+        Assertions.assertEquals(new Lexer(input).lex(), lexer.lex());
+        // the buffer copies each token before the reader's buffer is refilled
+        TokenBuffer buffer = new Lexer(new Lexer.ReaderCharStream(new StringReader(input), 16)).lexBuffer();
+        Assertions.assertTrue(buffer.isCopied());
+        Assertions.assertEquals(new Lexer(input).lex(), buffer.asList());
+        String source = "VAR x: Integer = 1; FUN main() DO print(x + \"a\"); END";
+        Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(),
+                new Parser(new Lexer(new StringReader(source)).lexBuffer()).parseSource());
+    }
+
+    @Test
+    void testReaderException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new Lexer.ReaderCharStream(new StringReader("x = \"" + "a".repeat(40) + "\\q\";"), 16)).lex());
+        Assertions.assertEquals(46, exception.getIndex());
+    }
+
+    @Test
+    void testMapped(@TempDir Path directory) throws IOException {
+        // non-ASCII literals, plus a code point outside the BMP lexed as two operators
+        String input = "LET caf\u00e9 = \"\u00fcber \u20ac \uD83D\uDE00\" + '\u00e9';\n\uD83D\uDE00 x -0.5 \"\\n\"";
+        Path path = directory.resolve("source.plc");
+        Files.writeString(path, input, StandardCharsets.UTF_8);
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(path).lex());
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(path).lexBuffer().asList());
+    }
+
+    @Test
+    void testMappedException(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("source.plc");
+        Files.writeString(path, "\"\u00fcber\\q\"", StandardCharsets.UTF_8);
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(path).lex());
+        // indices count chars rather than bytes
+        Assertions.assertEquals(6, exception.getIndex());
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
@@ -238,6 +569,9 @@ public class LexerTests {
         try {
             if (success) {
                 Assertions.assertEquals(expected, new Lexer(input).lex());
+                Assertions.assertEquals(expected, new Lexer(input).lexBuffer().asList());
+                Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lex());
+                Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lexBuffer().asList());
             } else {
                 Assertions.assertNotEquals(expected, new Lexer(input).lex());
             }
@@ -0,0 +1,74 @@
+package plc.project;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+final class ParallelParserTests {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testParallel(String test, Function<String, Parser> parser) {
+        String input = "VAR x: Integer = 1; " +
+                "FUN first(): Integer DO IF x < 10 DO x = x + 1; ELSE WHILE x > 0 DO x = x - 1; END END RETURN x; END " +
+                "FUN second(y: Integer) DO SWITCH y CASE 1: print(\"one\"); DEFAULT print(y); END END " +
+                "FUN third(): Integer DO RETURN first() * 2; END";
+        Ast.Source ast = parser.apply(input).parseSourceParallel(pool);
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), ast);
+        Assertions.assertTrue(ast.getFunctions().stream().noneMatch(Ast.Function::isDeferred));
+    }
+
+    private static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Token List", (Function<String, Parser>) input -> new Parser(new Lexer(input).lex())),
+                Arguments.of("Token Buffer", (Function<String, Parser>) input -> new Parser(new Lexer(input).lexBuffer())),
+                Arguments.of("Lexer", (Function<String, Parser>) input -> new Parser(new Lexer(input)))
+        );
+    }
+
+    @Test
+    void testMisleadingKeyword() {
+        // DO as a variable misleads the scan, so the body of b is parsed in place
+        String input = "FUN a() DO END FUN b() DO LET DO = 1; END FUN c() DO END";
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(),
+                new Parser(new Lexer(input).lex()).parseSourceParallel(pool));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "FUN a() DO END FUN b() DO x = ; END FUN c() DO y = ; END",
+            "FUN a() DO END VAR x: Integer; FUN b() DO END",
+            "FUN a() DO END FUN b() DO END END FUN c() DO END",
+            "FUN a() DO END FUN b() DO IF x DO END",
+    })
+    void testParallelException(String input) {
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSourceParallel(pool));
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+        Assertions.assertEquals(expected.getMessage(), exception.getMessage());
+    }
+
+}
@@ -0,0 +1,77 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+final class ParallelVisitorTests {
+
+    private static final String INPUT = input();
+
+    @Test
+    void testContext() {
+        Parser parser = lazy(INPUT);
+        Ast.Source ast = parser.parseSource();
+
+        // the depth of each node is passed down as context, the result is {nodes, maximum depth}
+        ParallelVisitor<Integer, int[]> metrics = new ParallelVisitor<>() {
+            @Override
+            protected Integer enter(Ast ast, Integer depth) {
+                return depth + 1;
+            }
+
+            @Override
+            protected int[] visit(Ast ast, Integer depth, List<int[]> children) {
+                int[] result = {1, depth};
+                for (int[] child : children) {
+                    result[0] += child[0];
+                    result[1] = Math.max(result[1], child[1]);
+                }
+                return result;
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int[] result = metrics.invoke(pool, ast, 0);
+            Assertions.assertEquals(parser.getNodeCount(), result[0]);
+            Assertions.assertEquals(6, result[1]);
+            Assertions.assertFalse(ast.getFunctions().get(1).isDeferred());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testDigest() {
+        // digests of children are memoized bottom-up, so the source's digest is computed in parallel
+        ParallelVisitor<Void, Digest> digests = new ParallelVisitor<>() {
+            @Override
+            protected Digest visit(Ast ast, Void context, List<Digest> children) {
+                return ast.getDigest();
+            }
+        };
+        Ast.Source sequential = new Parser(new Lexer(INPUT).lex()).parseSource();
+        Assertions.assertEquals(sequential.getDigest(), digests.invoke(lazy(INPUT).parseSource(), null));
+    }
+
+    private static Parser lazy(String input) {
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setLazy(true);
+        return parser;
+    }
+
+    private static String input() {
+        StringBuilder input = new StringBuilder("LIST l: Integer = [0");
+        for (int i = 1; i < 5000; i++) {
+            input.append(", ").append(i);
+        }
+        input.append("]; FUN f(a: Integer): Integer DO IF a > 0 DO RETURN f(a - 1); END RETURN (a); END");
+        for (int i = 0; i < 20; i++) {
+            input.append(" FUN g").append(i).append("() DO print(f(").append(i).append(")); END");
+        }
+        return input.toString();
+    }
+
+}
@@ -276,6 +276,14 @@ final class ParserTests2 {
                 Arguments.of("Escape Character",
                         Arrays.asList(new Token(Token.Type.STRING, "\"Hello,\\nWorld!\"", 0)),
                         new Ast.Expression.Literal("Hello,\nWorld!")
+                ),
+                Arguments.of("Multiple Escapes",
+                        Arrays.asList(new Token(Token.Type.STRING, "\"\\t\\\"a\\\\b\\n\\t\"", 0)),
+                        new Ast.Expression.Literal("\t\"a\\b\n\t")
+                ),
+                Arguments.of("Escaped Character",
+                        Arrays.asList(new Token(Token.Type.CHARACTER, "'\\''", 0)),
+                        new Ast.Expression.Literal('\'')
                 )
         );
     }
@@ -369,6 +377,55 @@ final class ParserTests2 {
                                 new Ast.Expression.Access(Optional.empty(), "expr1"),
                                 new Ast.Expression.Access(Optional.empty(), "expr2")
                         )
+                ),
+                Arguments.of("Left Associative",
+                        Arrays.asList(
+                                //a - b - c
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "-", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "-", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8)
+                        ),
+                        new Ast.Expression.Binary("-",
+                                new Ast.Expression.Binary("-",
+                                        new Ast.Expression.Access(Optional.empty(), "a"),
+                                        new Ast.Expression.Access(Optional.empty(), "b")
+                                ),
+                                new Ast.Expression.Access(Optional.empty(), "c")
+                        )
+                ),
+                Arguments.of("Precedence",
+                        Arrays.asList(
+                                //a || b + c * d ^ e < f
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "||", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 5),
+                                new Token(Token.Type.OPERATOR, "+", 7),
+                                new Token(Token.Type.IDENTIFIER, "c", 9),
+                                new Token(Token.Type.OPERATOR, "*", 11),
+                                new Token(Token.Type.IDENTIFIER, "d", 13),
+                                new Token(Token.Type.OPERATOR, "^", 15),
+                                new Token(Token.Type.IDENTIFIER, "e", 17),
+                                new Token(Token.Type.OPERATOR, "<", 19),
+                                new Token(Token.Type.IDENTIFIER, "f", 21)
+                        ),
+                        new Ast.Expression.Binary("||",
+                                new Ast.Expression.Access(Optional.empty(), "a"),
+                                new Ast.Expression.Binary("<",
+                                        new Ast.Expression.Binary("+",
+                                                new Ast.Expression.Access(Optional.empty(), "b"),
+                                                new Ast.Expression.Binary("^",
+                                                        new Ast.Expression.Binary("*",
+                                                                new Ast.Expression.Access(Optional.empty(), "c"),
+                                                                new Ast.Expression.Access(Optional.empty(), "d")
+                                                        ),
+                                                        new Ast.Expression.Access(Optional.empty(), "e")
+                                                )
+                                        ),
+                                        new Ast.Expression.Access(Optional.empty(), "f")
+                                )
+                        )
                 )
         );
     }
@@ -0,0 +1,171 @@
+package plc.project;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+final class StreamingParserTests {
+
+    private static final String INPUT = "VAR x: Integer = 1; FUN first() DO x = 2; END FUN second(): Integer DO RETURN x; END";
+    private static final String INVALID = INPUT + " VAR y: Integer;";
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void createExecutor() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    void testStreaming() {
+        Ast.Source expected = new Parser(new Lexer(INPUT).lex()).parseSource();
+        List<Ast> declarations = new ArrayList<>();
+        new Parser(new Lexer(INPUT)).parseSource(declarations::add, declarations::add);
+        Assertions.assertEquals(expected.getGlobals(), declarations.subList(0, 1));
+        Assertions.assertEquals(expected.getFunctions(), declarations.subList(1, 3));
+    }
+
+    @Test
+    void testStreamingException() {
+        List<Ast> declarations = new ArrayList<>();
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(INVALID)).parseSource(declarations::add, declarations::add));
+        Assertions.assertEquals(INPUT.length() + 1, exception.getIndex());
+        Assertions.assertEquals(3, declarations.size());
+    }
+
+    @Test
+    void testPublisher() throws Exception {
+        Assertions.assertEquals(stream(INPUT), collect(new Parser(new Lexer(INPUT)).publishSource(ForkJoinPool.commonPool()), new ArrayList<>()).get());
+    }
+
+    @Test
+    void testPublisherException() {
+        List<Ast> received = new ArrayList<>();
+        CompletableFuture<List<Ast>> result = collect(new Parser(new Lexer(INVALID)).publishSource(ForkJoinPool.commonPool()), received);
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, result::get);
+        Assertions.assertInstanceOf(ParseException.class, exception.getCause());
+        Assertions.assertEquals(stream(INPUT), received);
+    }
+
+    @Test
+    void testPublisherSingleThread() throws Exception {
+        // parsing and delivery share the only thread, which must not block when demand runs out
+        List<Ast> received = new ArrayList<>();
+        CompletableFuture<List<Ast>> result = new CompletableFuture<>();
+        new Parser(new Lexer(functions(1000))).publishSource(executor).subscribe(new Flow.Subscriber<>() {
+
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Ast item) {
+                received.add(item);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(received);
+            }
+
+        });
+        Assertions.assertEquals(1000, result.get(10, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    void testPublisherStoppedDemand() throws Exception {
+        // a subscriber which stops requesting leaves the thread free
+        List<Ast> received = new ArrayList<>();
+        new Parser(new Lexer(functions(1000))).publishSource(executor).subscribe(new Flow.Subscriber<>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(2);
+            }
+
+            @Override
+            public void onNext(Ast item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {}
+
+            @Override
+            public void onComplete() {}
+
+        });
+        executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(2, received.size());
+    }
+
+    private static List<Ast> stream(String input) {
+        List<Ast> declarations = new ArrayList<>();
+        new Parser(new Lexer(input).lex()).parseSource(declarations::add, declarations::add);
+        return declarations;
+    }
+
+    private static String functions(int count) {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            input.append("FUN f").append(i).append("() DO print(").append(i).append("); END ");
+        }
+        return input.toString();
+    }
+
+    private static CompletableFuture<List<Ast>> collect(Flow.Publisher<Ast> publisher, List<Ast> received) {
+        CompletableFuture<List<Ast>> result = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Ast item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(received);
+            }
+
+        });
+        return result;
+    }
+
+}
@@ -0,0 +1,54 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+final class SymbolTableTests {
+
+    private static final String INPUT = "VAR x: Integer = 1; FUN main(): Integer DO x = x + 1; RETURN x; END";
+
+    @Test
+    void testSharedNames() {
+        Ast.Source ast = new Parser(new Lexer(INPUT)).parseSource();
+        Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) ast.getFunctions().get(0).getStatements().get(0);
+        Assertions.assertSame(ast.getGlobals().get(0).getName(), ((Ast.Expression.Access) assignment.getReceiver()).getName());
+    }
+
+    @Test
+    void testNodeSymbols() {
+        Parser parser = new Parser(new Lexer(INPUT));
+        Ast.Source ast = parser.parseSource();
+        Assertions.assertEquals(parser.getSymbols().lookup("x"), new NodeSymbols().get(ast.getGlobals().get(0), parser.getSymbols()));
+    }
+
+    @Test
+    void testConcurrentGetName() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 100000; i++) {
+                symbols.intern("name" + i);
+            }
+        });
+        writer.start();
+        // every id below size() has its name visible without taking the lock
+        while (writer.isAlive()) {
+            int size = symbols.size();
+            if (size > 0) {
+                Assertions.assertEquals("name" + (size - 1), symbols.getName(size - 1));
+            }
+        }
+        writer.join();
+        Assertions.assertEquals(100000, symbols.size());
+    }
+
+    @Test
+    void testInterpreter() {
+        Parser parser = new Parser(new Lexer(INPUT));
+        Ast.Source ast = parser.parseSource();
+        Scope scope = new Scope(null, parser.getSymbols());
+        Assertions.assertEquals(BigInteger.valueOf(2), new Interpreter(scope).visit(ast).getValue());
+    }
+
+}
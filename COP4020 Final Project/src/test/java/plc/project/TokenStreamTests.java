@@ -0,0 +1,45 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+final class TokenStreamTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testSource(String test, Function<String, Parser> parser) {
+        String input = "VAR x: Integer = 1; LIST list: Integer = [1, 2, 3]; " +
+                "FUN main(): Integer DO WHILE x < 10 DO x = x + 1; END " +
+                "SWITCH list[0] CASE 1: print(\"one\"); DEFAULT RETURN 0; END RETURN x; END";
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), parser.apply(input).parseSource());
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Token Buffer", (Function<String, Parser>) input -> new Parser(new Lexer(input).lexBuffer())),
+                Arguments.of("Lexer", (Function<String, Parser>) input -> new Parser(new Lexer(input)))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testLexerException(String test, String input, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input)).parseSource());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testLexerException() {
+        return Stream.of(
+                // the parse error at 'x' is reached before the unterminated string is lexed
+                Arguments.of("Parse Error First", "VAR x = 1; \"unterminated", 6),
+                Arguments.of("Lex Error First", "FUN main() DO print(\"unterminated); END", 39)
+        );
+    }
+
+}